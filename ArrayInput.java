@@ -0,0 +1,21 @@
+/**************************************************************************
+* Input that feeds a Simpletron the integers of an array, in order.       *
+**************************************************************************/
+import java.util.NoSuchElementException;
+
+public class ArrayInput implements SimpletronInput {
+	private int[] values;
+	private int next;
+
+	public ArrayInput(int... values) {
+		this.values = values;
+		next = 0;
+	}
+
+	@Override
+	public int nextInt() {
+		if (next >= values.length)
+			throw new NoSuchElementException("no input left to read");
+		return values[next++];
+	}
+}
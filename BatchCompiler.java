@@ -0,0 +1,277 @@
+/**************************************************************************
+* This class compiles many Simple programs at once on a fork-join pool.   *
+* The list of sources is split in halves until each task holds one file,  *
+* so idle workers steal the other halves from busy ones. Every worker     *
+* thread owns one Compiler, which is reset between files instead of being *
+* made again, so the symbol table, the machine code, and the source       *
+* buffer are allocated once per worker and not once per file.             *
+*                                                                         *
+* Each source is compiled as compileProgram compiles it, the machine code *
+* is written next to it, and the outcome and time of every file is kept   *
+* for the summary. With a CompileCache, a file that was compiled before   *
+* is not compiled again, its machine code is written from the cache.      *
+*                                                                         *
+* usage: java BatchCompiler [-j threads] [-object] [-scale]               *
+*                           [-cache dir [-cachesize bytes]] dir|file...   *
+* compiles every .smp file in the directories and their subdirectories,   *
+* and the files given, and prints the summary. -object writes object      *
+* files instead of text, and -scale measures the throughput over an       *
+* increasing number of threads instead                                    *
+**************************************************************************/
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class BatchCompiler {
+	public enum Status {
+		COMPILED, //the machine code was written
+		FAILED,   //the program has errors, see getDiagnostics
+		ERROR     //the source could not be read or the machine code could not be written
+	}
+
+	//the outcome of one file
+	public static class Result {
+		private String fileName;
+		private Status status;
+		private List<Diagnostic> diagnostics;
+		private String error;
+		private long nanos;
+
+		Result(String fileName, Status status, List<Diagnostic> diagnostics, String error, long nanos) {
+			this.fileName = fileName;
+			this.status = status;
+			this.diagnostics = diagnostics;
+			this.error = error;
+			this.nanos = nanos;
+		}
+
+		public String getFileName() {
+			return fileName;
+		}
+
+		public Status getStatus() {
+			return status;
+		}
+
+		//post: returns the errors in the program, empty unless the status is FAILED
+		public List<Diagnostic> getDiagnostics() {
+			return diagnostics;
+		}
+
+		//post: returns why the file could not be read or written, null unless the status is ERROR
+		public String getError() {
+			return error;
+		}
+
+		//post: returns the time the file took to read, compile, and write
+		public long getNanos() {
+			return nanos;
+		}
+	}
+
+	//a pool thread with a compiler of its own
+	private static class Worker extends ForkJoinWorkerThread {
+		private Compiler compiler;
+
+		Worker(ForkJoinPool pool, WordFormat format, boolean objectOutput, CompileCache cache) {
+			super(pool);
+			compiler = new Compiler(format);
+			compiler.setObjectOutput(objectOutput);
+			compiler.setCache(cache);
+			compiler.setParallelParsing(false); //the files are compiled in parallel already
+		}
+	}
+
+	//compiles the files from start up to end, by halves
+	private static class CompileTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private List<String> fileNames;
+		private Result[] results;
+		private int start;
+		private int end;
+
+		CompileTask(List<String> fileNames, Result[] results, int start, int end) {
+			this.fileNames = fileNames;
+			this.results = results;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start == 1) {
+				results[start] = compile(((Worker)Thread.currentThread()).compiler, fileNames.get(start));
+				return;
+			}
+			int middle = (start + end) >>> 1;
+			invokeAll(new CompileTask(fileNames, results, start, middle), new CompileTask(fileNames, results, middle, end));
+		}
+	}
+
+	private static final long DEFAULT_CACHE_SIZE = 64L << 20;
+
+	private ForkJoinPool pool;
+	private long elapsedNanos; //wall time of the last compileAll
+
+	//post: a batch compiler with a worker per core, for programs in the standard format
+	public BatchCompiler() {
+		this(Runtime.getRuntime().availableProcessors(), WordFormat.STANDARD, false);
+	}
+
+	//post: a batch compiler with threads workers for programs in format. The machine code is written as
+	//      an object file if objectOutput is true, see Compiler.setObjectOutput
+	public BatchCompiler(int threads, WordFormat format, boolean objectOutput) {
+		this(threads, format, objectOutput, null);
+	}
+
+	//post: as above, but the files are looked up in cache and stored in it, see Compiler.setCache. The
+	//      cache may be null
+	public BatchCompiler(int threads, WordFormat format, boolean objectOutput, CompileCache cache) {
+		pool = new ForkJoinPool(threads, pool -> new Worker(pool, format, objectOutput, cache), null, false);
+	}
+
+	//post: every file is compiled, returns the results in the same order
+	public List<Result> compileAll(List<String> fileNames) {
+		Result[] results = new Result[fileNames.size()];
+		long start = System.nanoTime();
+		if (!fileNames.isEmpty())
+			pool.invoke(new CompileTask(fileNames, results, 0, fileNames.size()));
+		elapsedNanos = System.nanoTime() - start;
+		List<Result> list = new ArrayList<>();
+		Collections.addAll(list, results);
+		return list;
+	}
+
+	//post: returns the wall time the last compileAll took
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	private static Result compile(Compiler compiler, String fileName) {
+		long start = System.nanoTime();
+		try {
+			List<Diagnostic> diagnostics = compiler.compileFile(fileName);
+			return new Result(fileName, diagnostics.isEmpty() ? Status.COMPILED : Status.FAILED, diagnostics, null,
+					System.nanoTime() - start);
+		} catch (IOException e) {
+			return new Result(fileName, Status.ERROR, Collections.<Diagnostic>emptyList(), String.valueOf(e.getMessage()),
+					System.nanoTime() - start);
+		}
+	}
+
+	//post: returns the .smp files in each directory and its subdirectories in name order, and each other
+	//      path as it is. Throws IOException if a directory can't be read
+	public static List<String> sources(List<String> paths) throws IOException {
+		List<String> fileNames = new ArrayList<>();
+		for (String path : paths) {
+			Path directory = Paths.get(path);
+			if (!Files.isDirectory(directory)) {
+				fileNames.add(path);
+				continue;
+			}
+			try (Stream<Path> files = Files.walk(directory)) {
+				fileNames.addAll(files.filter(file -> file.toString().endsWith(".smp") && Files.isRegularFile(file))
+						.map(Path::toString).sorted().collect(Collectors.toList()));
+			}
+		}
+		return fileNames;
+	}
+
+	//post: writes a line per file with its status and time, the errors of the files that failed with the
+	//      line and column of each, and the totals
+	public static void writeSummary(PrintWriter writer, List<Result> results, long elapsedNanos) {
+		int[] counts = new int[Status.values().length];
+		long busyNanos = 0;
+		for (Result result : results) {
+			counts[result.status.ordinal()]++;
+			busyNanos += result.nanos;
+			writer.printf("%-8s %10.3f ms  %s%n", result.status, result.nanos / 1e6, result.fileName);
+			for (Diagnostic diagnostic : result.diagnostics)
+				writer.printf("%22s%d:%d: %s%n", "", diagnostic.getSourceLine(), diagnostic.getColumn(), diagnostic);
+			if (result.error != null)
+				writer.printf("%22s%s%n", "", result.error);
+		}
+		writer.printf("%n%d files: %d compiled, %d failed, %d errors%n", results.size(),
+				counts[Status.COMPILED.ordinal()], counts[Status.FAILED.ordinal()], counts[Status.ERROR.ordinal()]);
+		double seconds = elapsedNanos / 1e9;
+		writer.printf("%.3f s, %.0f files/s, %.2f workers busy on average%n", seconds,
+				seconds == 0 ? 0 : results.size() / seconds, elapsedNanos == 0 ? 0 : (double)busyNanos / elapsedNanos);
+		writer.flush();
+	}
+
+	//post: returns the files per second threads workers compile, best of rounds
+	private static double measure(int threads, List<String> fileNames, int rounds) {
+		BatchCompiler compiler = new BatchCompiler(threads, WordFormat.STANDARD, false);
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < rounds; round++) {
+			compiler.compileAll(fileNames);
+			best = Math.min(best, compiler.getElapsedNanos());
+		}
+		compiler.shutdown();
+		return fileNames.size() / (best / 1e9);
+	}
+
+	public static void main(String [] args) throws IOException {
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean objectOutput = false;
+		boolean scale = false;
+		String cacheDirectory = null;
+		long cacheSize = DEFAULT_CACHE_SIZE;
+		List<String> paths = new ArrayList<>();
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "-j":     threads = Integer.parseInt(args[++i]); break;
+				case "-object": objectOutput = true; break;
+				case "-scale": scale = true; break;
+				case "-cache": cacheDirectory = args[++i]; break;
+				case "-cachesize": cacheSize = Long.parseLong(args[++i]); break;
+				default:       paths.add(args[i]);
+			}
+		}
+		if (paths.isEmpty()) {
+			System.out.println("usage: java BatchCompiler [-j threads] [-object] [-scale] [-cache dir [-cachesize bytes]] dir|file...");
+			return;
+		}
+		List<String> fileNames = sources(paths);
+
+		if (scale) {
+			measure(threads, fileNames, 3); //warm up
+			double single = 0;
+			for (int count = 1; count <= threads; count *= 2) {
+				double throughput = measure(count, fileNames, 5);
+				if (count == 1)
+					single = throughput;
+				System.out.printf("%3d threads %12.0f files/s  %5.2fx%n", count, throughput, throughput / single);
+			}
+			return;
+		}
+
+		CompileCache cache = cacheDirectory == null ? null : new CompileCache(cacheDirectory, cacheSize);
+		BatchCompiler compiler = new BatchCompiler(threads, WordFormat.STANDARD, objectOutput, cache);
+		List<Result> results = compiler.compileAll(fileNames);
+		compiler.shutdown();
+		PrintWriter writer = new PrintWriter(System.out);
+		writeSummary(writer, results, compiler.getElapsedNanos());
+		if (cache != null)
+			cache.writeStatistics(writer);
+		for (Result result : results) {
+			if (result.status != Status.COMPILED)
+				System.exit(1);
+		}
+	}
+}
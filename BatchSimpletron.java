@@ -0,0 +1,352 @@
+/**************************************************************************
+* This class runs one machine level program over many input vectors at    *
+* once. Every run is a lane. Memory is stored one array per word with an  *
+* entry for each lane, made the first time the word is used, so an        *
+* instruction is decoded once and then applied to every lane that reached *
+* it in a single tight loop. A branch adds its lanes to the lanes waiting *
+* at the address each one goes to, and the lowest address with lanes      *
+* waiting runs next, so lanes that split at a branch are together again   *
+* where the paths join. The lane lists are reused, nothing is allocated   *
+* per branch.                                                             *
+*                                                                         *
+* Each lane has its own output, the transcript a Simpletron run on the    *
+* lane's input writes, including the memory dump of a lane that fails,    *
+* and its own fatal error status. Programs must be in the standard word   *
+* format.                                                                 *
+**************************************************************************/
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+public class BatchSimpletron {
+	private static final int MEMORY_SIZE   = Simpletron.MEMORY_SIZE;
+	private static final int MAX_WORD_SIZE = Simpletron.MAX_WORD_SIZE;
+	private static final int MIN_WORD_SIZE = Simpletron.MIN_WORD_SIZE;
+
+	//when branch sends a lane to the target
+	private static final int BRANCH_ALWAYS   = 0;
+	private static final int BRANCH_NEGATIVE = 1; //the accumulator is negative
+	private static final int BRANCH_ZERO     = 2; //the accumulator is zero
+
+	private int lanes;
+	private int[] image;             //the program, every lane's memory starts as it
+	private int[][] memory;          //memory[address][lane], null while no lane has used the word, it is image[address] in every lane
+	private int[] accumulator;       //accumulator of each lane
+	private boolean[] written;       //true for words a lane may have changed, they must be fetched per lane
+	private int[][] inputs;          //values READ takes for each lane
+	private int[] inputPosition;     //next value each lane reads
+	private StringBuilder[] output;
+	private String[] errors;         //fatal error of each lane, null while it runs or if it halted
+
+	//lanes waiting to run from each address, one past the end of memory for lanes that ran off it
+	private int[][] waiting;         //waiting[address] holds waitingCount[address] lanes, null if none wait there
+	private int[] waitingCount;
+	private BitSet ready;            //addresses whose waiting is not null
+	private ArrayList<int[]> free;   //lane arrays not in use, each holds as many lanes as there are
+
+	//pre:  image holds a program, inputs holds the values each lane reads, one row per lane
+	public BatchSimpletron(int[] image, int[][] inputs) {
+		lanes = inputs.length;
+		this.inputs = inputs;
+		this.image = Arrays.copyOf(image, MEMORY_SIZE);
+		memory = new int[MEMORY_SIZE][];
+		accumulator = new int[lanes];
+		written = new boolean[MEMORY_SIZE];
+		inputPosition = new int[lanes];
+		output = new StringBuilder[lanes];
+		for (int i = 0; i < lanes; i++)
+			output[i] = new StringBuilder();
+		errors = new String[lanes];
+		waiting = new int[MEMORY_SIZE + 1][];
+		waitingCount = new int[MEMORY_SIZE + 1];
+		ready = new BitSet(MEMORY_SIZE + 1);
+		free = new ArrayList<>();
+	}
+
+	public int getLaneCount() {
+		return lanes;
+	}
+
+	//post: returns what the lane wrote to its transcript
+	public String getOutput(int lane) {
+		return output[lane].toString();
+	}
+
+	//post: returns the fatal error that stopped the lane, null if it halted normally
+	public String getError(int lane) {
+		return errors[lane];
+	}
+
+	//post: every lane has run until it halted or failed
+	public void run() {
+		for (int lane = 0; lane < lanes; lane++)
+			waitingAt(0)[waitingCount[0]++] = lane;
+
+		//the lowest address runs first, so lanes that split at a branch meet again where the paths join
+		for (int pc = ready.nextSetBit(0); pc >= 0; pc = ready.nextSetBit(0)) {
+			int[] group = waiting[pc];
+			int count = waitingCount[pc];
+			waiting[pc] = null;
+			waitingCount[pc] = 0;
+			ready.clear(pc);
+			runGroup(pc, group, count);
+			free.add(group);
+		}
+	}
+
+	//post: returns the lanes waiting at address, an empty array from free if none were
+	private int[] waitingAt(int address) {
+		if (waiting[address] == null) {
+			waiting[address] = free.isEmpty() ? new int[lanes] : free.remove(free.size() - 1);
+			ready.set(address);
+		}
+		return waiting[address];
+	}
+
+	//post: returns the word at address of every lane, it is made from the image the first time it is used
+	private int[] row(int address) {
+		if (memory[address] == null) {
+			int[] row = new int[lanes];
+			Arrays.fill(row, image[address]);
+			memory[address] = row;
+		}
+		return memory[address];
+	}
+
+	//post: the count lanes at the front of group run from pc until they halt, every one fails, or a
+	//      branch is reached. The lanes that go on are added to the lanes waiting where they go
+	private void runGroup(int pc, int[] group, int count) {
+		while (count > 0) {
+			if (pc >= MEMORY_SIZE || pc < 0) {
+				failAll(group, count, pc, "*** program execution failed ***");
+				return;
+			}
+
+			//a word that was written may hold a different instruction in each lane
+			if (written[pc])
+				count = splitByWord(pc, group, count);
+
+			int word = (memory[pc] == null) ? image[pc] : memory[pc][group[0]];
+			int operationCode = word / 1000;
+			int operand = word % 1000;
+
+			int[] acc = accumulator;
+			for (int i = 0; i < count; i++) {
+				if (acc[group[i]] > MAX_WORD_SIZE || acc[group[i]] < MIN_WORD_SIZE) {
+					fail(group[i], pc, "*** Overflow occured ***");
+					group[i--] = group[--count];
+				}
+			}
+			if (count == 0)
+				return;
+			if (operand >= MEMORY_SIZE || operand < 0) {
+				failAll(group, count, pc, "*** operand index out of bounds ***");
+				return;
+			}
+
+			//the operand of a branch is an address, of any other instruction a word of data
+			int[] values = (operationCode < Simpletron.BRANCH) ? row(operand) : null;
+			switch (operationCode) {
+				case Simpletron.READ:       for (int i = 0; i < count; i++) {
+												int lane = group[i];
+												output[lane].append("Enter an integer: ");
+												if (inputPosition[lane] >= inputs[lane].length) {
+													fail(lane, pc, "*** error reading input ***");
+													group[i--] = group[--count];
+													continue;
+												}
+												int n = inputs[lane][inputPosition[lane]++];
+												if (n > MAX_WORD_SIZE || n < MIN_WORD_SIZE) {
+													fail(lane, pc, "*** overflow occured ***");
+													group[i--] = group[--count];
+													continue;
+												}
+												values[lane] = n;
+												output[lane].append(n).append('\n');
+											}
+											written[operand] = true;
+											break;
+				case Simpletron.WRITE:      for (int i = 0; i < count; i++)
+												output[group[i]].append(values[group[i]]).append('\n');
+											break;
+				case Simpletron.NEWLINE:    for (int i = 0; i < count; i++)
+												output[group[i]].append('\n');
+											break;
+				case Simpletron.LOAD:       for (int i = 0; i < count; i++)
+												acc[group[i]] = values[group[i]];
+											break;
+				case Simpletron.STORE:      for (int i = 0; i < count; i++) {
+												values[group[i]] = acc[group[i]];
+												acc[group[i]] = 0;
+											}
+											written[operand] = true;
+											break;
+				case Simpletron.ADD:        for (int i = 0; i < count; i++)
+												acc[group[i]] += values[group[i]];
+											break;
+				case Simpletron.SUBTRACT:   for (int i = 0; i < count; i++)
+												acc[group[i]] -= values[group[i]];
+											break;
+				case Simpletron.MULTIPLY:   for (int i = 0; i < count; i++)
+												acc[group[i]] *= values[group[i]];
+											break;
+				case Simpletron.DIVIDE:     for (int i = 0; i < count; i++) {
+												if (values[group[i]] == 0) {
+													fail(group[i], pc, "*** attempt to divide by zero ***");
+													group[i--] = group[--count];
+												} else {
+													acc[group[i]] /= values[group[i]];
+												}
+											}
+											break;
+				case Simpletron.REMAINDER:  for (int i = 0; i < count; i++) {
+												if (values[group[i]] == 0) {
+													fail(group[i], pc, "*** attempt to divide by zero ***");
+													group[i--] = group[--count];
+												} else {
+													acc[group[i]] %= values[group[i]];
+												}
+											}
+											break;
+				case Simpletron.POWER:      for (int i = 0; i < count; i++)
+												acc[group[i]] = (int)Math.pow(acc[group[i]], values[group[i]]);
+											break;
+				case Simpletron.BRANCH:     branch(pc, group, count, operand, BRANCH_ALWAYS);
+											return;
+				case Simpletron.BRANCHNEG:  branch(pc, group, count, operand, BRANCH_NEGATIVE);
+											return;
+				case Simpletron.BRANCHZERO: branch(pc, group, count, operand, BRANCH_ZERO);
+											return;
+				case Simpletron.HALT:       for (int i = 0; i < count; i++)
+												output[group[i]].append("*** Simpletron execution terminated ***\n");
+											return;
+				default:                    failAll(group, count, pc, "*** Invalid operation code ***");
+											return;
+			}
+			pc++;
+		}
+	}
+
+	//post: the count lanes of group at the branch at pc are added to the lanes waiting at target, or at
+	//      the next word if they don't take the branch
+	private void branch(int pc, int[] group, int count, int target, int condition) {
+		int[] acc = accumulator;
+		int[] taken = waitingAt(target);
+		int takenCount = waitingCount[target];
+		if (condition == BRANCH_ALWAYS || target == pc + 1) {
+			System.arraycopy(group, 0, taken, takenCount, count);
+			waitingCount[target] = takenCount + count;
+			return;
+		}
+
+		int[] notTaken = waitingAt(pc + 1);
+		int notTakenCount = waitingCount[pc + 1];
+		for (int i = 0; i < count; i++) {
+			int lane = group[i];
+			if (condition == BRANCH_ZERO ? acc[lane] == 0 : acc[lane] < 0)
+				taken[takenCount++] = lane;
+			else
+				notTaken[notTakenCount++] = lane;
+		}
+		waitingCount[target] = takenCount;
+		waitingCount[pc + 1] = notTakenCount;
+	}
+
+	//post: the lanes whose word at pc differs from the first lane's wait at pc to run as a group of their
+	//      own, returns how many lanes are left at the front of group
+	private int splitByWord(int pc, int[] group, int count) {
+		int[] words = memory[pc];
+		int first = words[group[0]];
+		int kept = 0;
+		for (int i = 0; i < count; i++) {
+			int lane = group[i];
+			if (words[lane] == first)
+				group[kept++] = lane;
+			else
+				waitingAt(pc)[waitingCount[pc]++] = lane;
+		}
+		return kept;
+	}
+
+	//post: the lane is stopped at pc with message. Its transcript ends as a Simpletron's does, with the
+	//      message and the dump of its registers and memory
+	private void fail(int lane, int pc, String message) {
+		errors[lane] = message;
+		output[lane].append(message).append('\n');
+		output[lane].append("*** Simpletron execution abnormally terminated ***\n");
+		snapshot(lane, pc).appendDump(output[lane]);
+	}
+
+	//post: returns the state a Simpletron running the lane is in when it fails at pc. Its registers hold
+	//      the word at pc, or the last word of memory if execution ran past it
+	private Snapshot snapshot(int lane, int pc) {
+		int[] words = new int[MEMORY_SIZE];
+		for (int address = 0; address < MEMORY_SIZE; address++)
+			words[address] = (memory[address] == null) ? image[address] : memory[address][lane];
+		int word = words[(pc >= MEMORY_SIZE || pc < 0) ? MEMORY_SIZE - 1 : pc];
+		return new Snapshot(WordFormat.STANDARD, words, accumulator[lane], pc, word, word / 1000, word % 1000, 0);
+	}
+
+	private void failAll(int[] group, int count, int pc, String message) {
+		for (int i = 0; i < count; i++)
+			fail(group[i], pc, message);
+	}
+
+
+	//usage: java BatchSimpletron program.txt [lanes] [rounds]
+	//runs the program over lanes random input vectors in lockstep, and then in a Simpletron one vector
+	//after another, rounds times. Checks that every lane's transcript is the Simpletron's each round, and
+	//prints the fastest time of each, the first rounds are only the JIT warming up
+	public static void main(String [] args) throws IOException {
+		int[] image = Simpletron.readImage(args[0]);
+		int lanes = (args.length > 1) ? Integer.parseInt(args[1]) : 1000;
+		int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 50;
+
+		Random random = new Random(42);
+		int[][] inputs = new int[lanes][];
+		for (int i = 0; i < lanes; i++) {
+			inputs[i] = new int[16];
+			for (int n = 0; n < inputs[i].length; n++)
+				inputs[i][n] = random.nextInt(200);
+		}
+
+		ProgramImage program = new ProgramImage(image); //decoded and verified once, as a server would
+		long lockstep = Long.MAX_VALUE;
+		long sequential = Long.MAX_VALUE;
+		for (int round = 0; round < rounds; round++) {
+			long start = System.nanoTime();
+			BatchSimpletron batch = new BatchSimpletron(image, inputs);
+			batch.run();
+			lockstep = Math.min(lockstep, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			String[] transcripts = new String[lanes];
+			for (int i = 0; i < lanes; i++)
+				transcripts[i] = execute(program, inputs[i]);
+			sequential = Math.min(sequential, System.nanoTime() - start);
+
+			for (int i = 0; i < lanes; i++) {
+				if (!batch.getOutput(i).equals(transcripts[i]))
+					throw new IllegalStateException("lane " + i + " does not write what a Simpletron does:\n"
+							+ batch.getOutput(i) + "\nSimpletron:\n" + transcripts[i]);
+			}
+		}
+		System.out.printf("%d lanes: lockstep %.3f ms, Simpletron one at a time %.3f ms, %.1fx%n", lanes,
+				lockstep / 1e6, sequential / 1e6, (double)sequential / lockstep);
+	}
+
+	//post: returns the transcript of a Simpletron that runs program on inputs
+	private static String execute(ProgramImage program, int[] inputs) {
+		StringOutput output = new StringOutput();
+		Simpletron simpletron = new Simpletron(new ArrayInput(inputs), output);
+		simpletron.loadProgram(program);
+		try {
+			simpletron.executeProgram();
+		} catch (SimpletronException e) {
+			//the transcript ends with the error, as the lane's does
+		}
+		return output.getTranscript();
+	}
+}
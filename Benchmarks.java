@@ -0,0 +1,415 @@
+/**************************************************************************
+* Benchmarks of the compiler, the expression classes, the symbol table,   *
+* and each execution mode of the Simpletron, on programs written by       *
+* ProgramGenerator with fixed seeds, so every run measures the same work. *
+*                                                                         *
+* Each benchmark runs warm-up iterations, which are thrown away, and then *
+* measured iterations of a fixed time. The score is the mean over the     *
+* measured iterations and the error is their standard deviation. Scores   *
+* can be saved as CSV and compared with a saved baseline, which flags     *
+* every benchmark that got slower by more than the threshold.             *
+*                                                                         *
+* The same benchmarks run under JMH, forked and with its warm-up and      *
+* blackholes, from jmh/, which the jmh profile of the pom builds:         *
+*   mvn -Pjmh package && java -jar target/benchmarks.jar                  *
+* JMH won't generate code for a class in the default package, so the JMH  *
+* class is in a package and gets each benchmark from operation(name).     *
+*                                                                         *
+* usage: java Benchmarks [-w warmups] [-i iterations] [-t millis]         *
+*        [-csv file] [-baseline file] [-threshold percent] [prefix...]    *
+* runs the benchmarks whose names start with one of the prefixes, all of  *
+* them if none are given                                                  *
+**************************************************************************/
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.LongSupplier;
+
+public class Benchmarks {
+	//one call of a benchmark, returns a value that is folded into sink so the work can't be optimized away
+	interface Operation {
+		long run() throws Exception;
+	}
+
+	private static class Benchmark {
+		String name;
+		String units;
+		long unitsPerOperation; //the score is operations per second times this
+		Operation operation;
+
+		Benchmark(String name, String units, long unitsPerOperation, Operation operation) {
+			this.name = name;
+			this.units = units;
+			this.unitsPerOperation = unitsPerOperation;
+			this.operation = operation;
+		}
+	}
+
+	private static final PrintStream DISCARD = new PrintStream(new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int offset, int length) {
+		}
+	});
+
+	private static final SimpletronOutput NO_OUTPUT = new SimpletronOutput() {
+		@Override
+		public void print(String string) {
+		}
+
+		@Override
+		public void echo(String string) {
+		}
+
+		@Override
+		public void printWord(int word) {
+		}
+
+		@Override
+		public void echoWord(int word) {
+		}
+
+		@Override
+		public void close() {
+		}
+	};
+
+	private static volatile long sink;
+
+	private int warmups = 3;
+	private int iterations = 5;
+	private long iterationMillis = 1000;
+	private Path directory; //holds the generated sources and what the compiler writes
+
+	//post: returns every benchmark, the programs they run are generated and compiled here
+	private List<Benchmark> createBenchmarks() throws IOException {
+		List<Benchmark> benchmarks = new ArrayList<>();
+		directory = Files.createTempDirectory("simpletron-benchmarks");
+
+		String small = source("small.smp", 60, ProgramGenerator.Mix.LET_HEAVY, 1);
+		benchmarks.add(new Benchmark("compile.small", "ops/s", 1, () -> compile(small, WordFormat.STANDARD).length()));
+		String large = source("large.smp", 2000, ProgramGenerator.Mix.LET_HEAVY, 2);
+		WordFormat wide = WordFormat.wide(2000 * 12);
+		benchmarks.add(new Benchmark("compile.large", "ops/s", 1, () -> compile(large, wide).length()));
+		benchmarks.add(new Benchmark("compile.patch", "ops/s", 1, editLine(large, wide, false)));
+		benchmarks.add(new Benchmark("compile.relink", "ops/s", 1, editLine(large, wide, true)));
+		Compiler cached = new Compiler(wide); //every compile after the first is a cache hit
+		cached.setCache(new CompileCache(directory.resolve("cache").toString(), Long.MAX_VALUE));
+		benchmarks.add(new Benchmark("compile.cached", "ops/s", 1, () -> compile(large, wide, cached).length()));
+
+		ProgramGenerator generator = new ProgramGenerator(3);
+		String[] infix = new String[1024];
+		String[] postfix = new String[infix.length];
+		for (int i = 0; i < infix.length; i++) {
+			infix[i] = generator.expression(8, true);
+			postfix[i] = InfixToPostfixConverter.getPostfix(generator.expression(8, false));
+		}
+		int[] next = new int[1];
+		benchmarks.add(new Benchmark("expression.getPostfix", "ops/s", 1,
+				() -> InfixToPostfixConverter.getPostfix(infix[next[0]++ & (infix.length - 1)]).length()));
+		benchmarks.add(new Benchmark("expression.evaluate", "ops/s", 1,
+				() -> new PostfixEvaluator(postfix[next[0]++ & (postfix.length - 1)]).evaluate()));
+
+		//the symbols of a program of a million lines, variables, and constants, in a SymbolTable and in the
+		//TreeMap it was before it was a hash table
+		int entries = 1000000;
+		SymbolTable table = fillTable(entries);
+		TreeMap<TableEntry, TableEntry> tree = fillTree(entries);
+		int[] symbols = new int[1 << 16];
+		char[] types = new char[symbols.length];
+		lookups(entries, symbols, types);
+		benchmarks.add(new Benchmark("symboltable.get", "ops/s", 1, () -> {
+			int i = next[0]++ & (symbols.length - 1);
+			return table.getLocation(symbols[i], types[i]);
+		}));
+		benchmarks.add(new Benchmark("symboltable.treemap.get", "ops/s", 1, () -> {
+			int i = next[0]++ & (symbols.length - 1);
+			TableEntry entry = tree.get(new TableEntry(symbols[i], types[i], 0));
+			return entry == null ? 0 : entry.getLocation();
+		}));
+		benchmarks.add(new Benchmark("symboltable.put", "entries/s", entries, () -> fillTable(entries).size()));
+		benchmarks.add(new Benchmark("symboltable.treemap.put", "entries/s", entries, () -> fillTree(entries).size()));
+
+		String loops = source("loops.smp", 80, ProgramGenerator.Mix.BRANCH_HEAVY, 4);
+		ProgramImage image = ProgramImage.load(compile(loops, WordFormat.STANDARD));
+		long instructions = countInstructions(image);
+		for (Simpletron.ExecutionMode mode : Simpletron.ExecutionMode.values()) {
+			benchmarks.add(new Benchmark("simpletron." + mode.name().toLowerCase(), "instructions/s", instructions,
+					() -> execute(image, mode)));
+		}
+		return benchmarks;
+	}
+
+	//post: returns the operation of the benchmark called name, for a harness outside this class to time.
+	//      The files it uses are deleted when the JVM exits
+	public static LongSupplier operation(String name) throws IOException {
+		Benchmarks harness = new Benchmarks();
+		List<Benchmark> benchmarks = harness.createBenchmarks();
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> delete(harness.directory)));
+		for (Benchmark benchmark : benchmarks) {
+			if (benchmark.name.equals(name)) {
+				Operation operation = benchmark.operation;
+				return () -> {
+					try {
+						return operation.run();
+					} catch (Exception e) {
+						throw new IllegalStateException(name + " failed", e);
+					}
+				};
+			}
+		}
+		throw new IllegalArgumentException("there is no benchmark " + name);
+	}
+
+	//post: the generated program is written to the directory, returns its file name
+	private String source(String name, int statements, ProgramGenerator.Mix mix, long seed) throws IOException {
+		String fileName = directory.resolve(name).toString();
+		new ProgramGenerator(seed).write(fileName, statements, mix);
+		return fileName;
+	}
+
+	//post: returns an operation that edits a line in the middle of the source and compiles it again with an
+	//      IncrementalCompiler. The edit swaps + and - in a let, which is patched into the last compilation,
+	//      or with relink true adds and removes a print, which moves every line after it
+	private static Operation editLine(String source, WordFormat format, boolean relink) throws IOException {
+		IncrementalCompiler compiler = new IncrementalCompiler(format);
+		List<String> lines = Files.readAllLines(new File(source).toPath());
+		compiler.compile(String.join("\n", lines));
+		int middle = lines.size() / 2;
+		while (!lines.get(middle).contains(" + "))
+			middle++;
+		String let = lines.get(middle);
+		String edited = let.replace(" + ", " - ");
+		List<String> print = Collections.singletonList(let.substring(0, let.indexOf(' ')) + "5 print a");
+		List<String> none = Collections.emptyList();
+		int line = middle;
+		boolean[] toggle = new boolean[1];
+		return () -> {
+			toggle[0] = !toggle[0];
+			if (relink)
+				compiler.replaceLines(line + 1, toggle[0] ? 0 : 1, toggle[0] ? print : none);
+			else
+				compiler.setLine(line, toggle[0] ? edited : let);
+			CompilationResult result = compiler.compile();
+			if (!result.isSuccessful())
+				throw new IllegalStateException("the edited program does not compile");
+			return result.getCodeLength();
+		};
+	}
+
+	//post: the source is compiled, returns the name of the file the compiler wrote
+	private static String compile(String source, WordFormat format) throws IOException {
+		return compile(source, format, new Compiler(format));
+	}
+
+	//post: the source is compiled by compiler, which is for format
+	private static String compile(String source, WordFormat format, Compiler compiler) throws IOException {
+		String base = source.substring(0, source.length() - 3);
+		File machineCode = new File(base + "txt");
+		machineCode.delete();
+		PrintStream out = System.out;
+		System.setOut(DISCARD); //the compiler reports to the console
+		try {
+			compiler.compileProgram(source);
+		} finally {
+			System.setOut(out);
+		}
+		if (!machineCode.exists())
+			throw new IOException(source + " does not compile");
+		return machineCode.getPath();
+	}
+
+	private static final char[] KINDS = {TableEntry.LINE, TableEntry.VARIABLE, TableEntry.CONSTANT};
+
+	//post: returns a table of count lines, variables, and constants, each looked up and then entered as a
+	//      compiler enters them
+	private static SymbolTable fillTable(int count) {
+		SymbolTable table = new SymbolTable();
+		for (int i = 0; i < count; i++)
+			table.putIfAbsent(i / 3 * 10, KINDS[i % 3], i);
+		return table;
+	}
+
+	//post: as fillTable, in a TreeMap the way SymbolTable kept them before
+	private static TreeMap<TableEntry, TableEntry> fillTree(int count) {
+		TreeMap<TableEntry, TableEntry> tree = new TreeMap<>();
+		for (int i = 0; i < count; i++) {
+			TableEntry entry = new TableEntry(i / 3 * 10, KINDS[i % 3], i);
+			if (tree.get(new TableEntry(entry.getSymbol(), entry.getType(), 0)) == null)
+				tree.put(entry, entry);
+		}
+		return tree;
+	}
+
+	//post: symbols and types hold the lookups a compiler makes in a table of count entries, see fillTable.
+	//      Nine in ten of them are in the table
+	private static void lookups(int count, int[] symbols, char[] types) {
+		Random random = new Random(5);
+		for (int i = 0; i < symbols.length; i++) {
+			int entry = random.nextInt(count);
+			symbols[i] = entry / 3 * 10 + (random.nextInt(10) == 0 ? 5 : 0); //a line number that isn't there
+			types[i] = KINDS[entry % 3];
+		}
+	}
+
+	private static long countInstructions(ProgramImage image) {
+		Simpletron simpletron = new Simpletron(input(), NO_OUTPUT);
+		simpletron.loadProgram(image);
+		if (simpletron.executeSlice(Long.MAX_VALUE) != Simpletron.SliceResult.HALTED)
+			throw new IllegalStateException("the benchmark program does not halt");
+		return simpletron.getInstructionsExecuted();
+	}
+
+	private static long execute(ProgramImage image, Simpletron.ExecutionMode mode) {
+		Simpletron simpletron = new Simpletron(input(), NO_OUTPUT);
+		simpletron.loadProgram(image);
+		simpletron.setExecutionMode(mode);
+		simpletron.executeProgram();
+		return simpletron.getInstructionsExecuted();
+	}
+
+	//post: returns input that gives every run the same values
+	private static SimpletronInput input() {
+		int[] count = new int[1];
+		return () -> count[0]++ % 97;
+	}
+
+	//post: returns the score of each measured iteration of benchmark
+	private double[] measure(Benchmark benchmark) throws Exception {
+		double[] scores = new double[iterations];
+		long iterationNanos = iterationMillis * 1000000;
+		for (int iteration = -warmups; iteration < iterations; iteration++) {
+			long result = 0;
+			long operations = 0;
+			long start = System.nanoTime();
+			long elapsed;
+			do {
+				result += benchmark.operation.run();
+				operations++;
+				elapsed = System.nanoTime() - start;
+			} while (elapsed < iterationNanos);
+			sink += result;
+			if (iteration >= 0)
+				scores[iteration] = operations * benchmark.unitsPerOperation * 1e9 / elapsed;
+		}
+		return scores;
+	}
+
+	private static double mean(double[] values) {
+		double sum = 0;
+		for (double value : values)
+			sum += value;
+		return sum / values.length;
+	}
+
+	private static double deviation(double[] values) {
+		double mean = mean(values);
+		double sum = 0;
+		for (double value : values)
+			sum += (value - mean) * (value - mean);
+		return values.length < 2 ? 0 : Math.sqrt(sum / (values.length - 1));
+	}
+
+	//post: returns the scores of a CSV file written by -csv, by benchmark name
+	private static Map<String, Double> readBaseline(String fileName) throws IOException {
+		Map<String, Double> baseline = new HashMap<>();
+		for (String line : Files.readAllLines(new File(fileName).toPath())) {
+			String[] fields = line.split(",");
+			if (fields.length >= 2 && !fields[0].equals("benchmark"))
+				baseline.put(fields[0], Double.parseDouble(fields[1]));
+		}
+		return baseline;
+	}
+
+	//post: directory and everything in it are deleted, the compile cache is a directory in it
+	private static void delete(Path directory) {
+		File[] files = directory.toFile().listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.isDirectory())
+					delete(file.toPath());
+				else
+					file.delete();
+			}
+		}
+		directory.toFile().delete();
+	}
+
+	public static void main(String [] args) throws Exception {
+		Benchmarks harness = new Benchmarks();
+		String csv = null;
+		String baselineFile = null;
+		double threshold = 10;
+		List<String> prefixes = new ArrayList<>();
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "-w":         harness.warmups = Integer.parseInt(args[++i]); break;
+				case "-i":         harness.iterations = Integer.parseInt(args[++i]); break;
+				case "-t":         harness.iterationMillis = Long.parseLong(args[++i]); break;
+				case "-csv":       csv = args[++i]; break;
+				case "-baseline":  baselineFile = args[++i]; break;
+				case "-threshold": threshold = Double.parseDouble(args[++i]); break;
+				default:           prefixes.add(args[i]);
+			}
+		}
+		Map<String, Double> baseline = (baselineFile == null) ? null : readBaseline(baselineFile);
+
+		List<Benchmark> benchmarks = harness.createBenchmarks();
+		List<String> rows = new ArrayList<>();
+		int regressions = 0;
+		System.out.printf("%-24s %16s    %14s  %-16s%s%n", "benchmark", "score", "error", "units",
+				baseline == null ? "" : "  change");
+		try {
+			for (Benchmark benchmark : benchmarks) {
+				boolean selected = prefixes.isEmpty();
+				for (String prefix : prefixes)
+					selected |= benchmark.name.startsWith(prefix);
+				if (!selected)
+					continue;
+
+				double[] scores = harness.measure(benchmark);
+				double score = mean(scores);
+				double error = deviation(scores);
+				System.out.printf("%-24s %16.1f +- %14.1f  %-16s", benchmark.name, score, error, benchmark.units);
+				Double previous = (baseline == null) ? null : baseline.get(benchmark.name);
+				if (previous != null) {
+					double change = (score - previous) / previous * 100;
+					boolean regression = change < -threshold;
+					if (regression)
+						regressions++;
+					System.out.printf("  %+6.1f%%%s", change, regression ? "  REGRESSION" : "");
+				}
+				System.out.println();
+				rows.add(benchmark.name + "," + score + "," + error + "," + benchmark.units);
+			}
+		} finally {
+			delete(harness.directory);
+		}
+
+		if (csv != null) {
+			try (PrintWriter writer = new PrintWriter(csv)) {
+				writer.println("benchmark,score,error,units");
+				for (String row : rows)
+					writer.println(row);
+			}
+		}
+		if (regressions > 0) {
+			System.out.println(regressions + " benchmarks slower than the baseline by more than " + threshold + "%");
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,283 @@
+/**************************************************************************
+* Output that collects what a Simpletron prints in char buffers and only  *
+* writes them out when they are full, when flush is called, or when the   *
+* run ends. Integers are formatted straight into the buffers, so WRITE    *
+* allocates nothing. Full buffers can be handed to a background thread    *
+* that does the writing while the program keeps running.                 *
+*                                                                         *
+* Errors writing are kept, like PrintWriter does, and reported by         *
+* checkError.                                                             *
+**************************************************************************/
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+
+public class BufferedOutput implements SimpletronOutput {
+	private static final int BUFFER_SIZE = 8192;
+	private static final int SPARE_BUFFERS = 4;  //buffers the background writer can hold before print waits for it
+
+	private Writer screen;            //null if nothing is shown to the user
+	private Writer transcript;        //null if no transcript is kept
+	private boolean closeScreen;      //false if screen must stay open after close, e.g. System.out
+	private char[] screenBuffer;
+	private int screenLength;
+	private char[] transcriptBuffer;
+	private int transcriptLength;
+	private char[] digits;            //an integer is formatted here, backwards
+	private BackgroundWriter background;
+	private volatile IOException error;
+	private boolean closed;
+
+	//a buffer waiting to be written by the background thread
+	private static class Chunk {
+		Writer target;
+		char[] chars;
+		int length;
+		CountDownLatch written;       //counted down once everything queued before the chunk is written
+
+		Chunk(Writer target, char[] chars, int length, CountDownLatch written) {
+			this.target = target;
+			this.chars = chars;
+			this.length = length;
+			this.written = written;
+		}
+	}
+
+	//writes chunks in the order they are queued, and gives their buffers back to be filled again
+	private class BackgroundWriter implements Runnable {
+		private BlockingQueue<Chunk> chunks = new LinkedBlockingQueue<>();
+		private BlockingQueue<char[]> free = new ArrayBlockingQueue<>(SPARE_BUFFERS);
+		private Thread thread;
+
+		BackgroundWriter() {
+			for (int i = 0; i < SPARE_BUFFERS; i++)
+				free.add(new char[BUFFER_SIZE]);
+			thread = new Thread(this, "simpletron-output");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					Chunk chunk = chunks.take();
+					if (chunk.chars != null) {
+						write(chunk.target, chunk.chars, chunk.length);
+						free.put(chunk.chars);
+					}
+					if (chunk.written != null) {
+						flushWriters();
+						chunk.written.countDown();
+					}
+				}
+			} catch (InterruptedException e) {
+				//the output was closed
+			}
+		}
+
+		//post: chars is queued, returns an empty buffer to fill next
+		char[] hand(Writer target, char[] chars, int length) {
+			chunks.add(new Chunk(target, chars, length, null));
+			try {
+				return free.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return new char[BUFFER_SIZE];
+			}
+		}
+
+		//post: waits until everything queued so far is written and the writers are flushed
+		void drain() {
+			CountDownLatch written = new CountDownLatch(1);
+			chunks.add(new Chunk(null, null, 0, written));
+			try {
+				written.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	//pre:  screen and transcript are not both null
+	//post: an output that prints to screen and keeps the transcript in transcript. Either may be null.
+	//      close() closes transcript, and screen if closeScreen is true. If background is true the
+	//      writers are written to by a thread of their own
+	public BufferedOutput(Writer screen, boolean closeScreen, Writer transcript, boolean background) {
+		this.screen = screen;
+		this.closeScreen = closeScreen;
+		this.transcript = transcript;
+		screenBuffer = new char[BUFFER_SIZE];
+		transcriptBuffer = new char[BUFFER_SIZE];
+		digits = new char[11];
+		if (background)
+			this.background = new BackgroundWriter();
+	}
+
+	@Override
+	public void print(String string) {
+		appendScreen(string);
+		appendTranscript(string);
+	}
+
+	@Override
+	public void echo(String string) {
+		appendTranscript(string);
+	}
+
+	@Override
+	public void printWord(int word) {
+		int start = format(word);
+		if (screen != null) {
+			if (screenLength + digits.length + 1 > BUFFER_SIZE)
+				handOffScreen();
+			screenLength = copyDigits(start, screenBuffer, screenLength);
+		}
+		if (transcript != null) {
+			if (transcriptLength + digits.length + 1 > BUFFER_SIZE)
+				handOffTranscript();
+			transcriptLength = copyDigits(start, transcriptBuffer, transcriptLength);
+		}
+	}
+
+	@Override
+	public void echoWord(int word) {
+		if (transcript == null)
+			return;
+		int start = format(word);
+		if (transcriptLength + digits.length + 1 > BUFFER_SIZE)
+			handOffTranscript();
+		transcriptLength = copyDigits(start, transcriptBuffer, transcriptLength);
+	}
+
+	//post: everything printed so far has been written to the writers, and they have been flushed
+	@Override
+	public void flush() {
+		if (screenLength > 0)
+			handOffScreen();
+		if (transcriptLength > 0)
+			handOffTranscript();
+		if (background != null)
+			background.drain();
+		else
+			flushWriters();
+	}
+
+	@Override
+	public void close() {
+		if (closed)
+			return;
+		flush();
+		closed = true;
+		if (background != null)
+			background.thread.interrupt();
+		try {
+			if (transcript != null)
+				transcript.close();
+			if (screen != null && closeScreen)
+				screen.close();
+		} catch (IOException e) {
+			error = e;
+		}
+	}
+
+	//post: returns true if writing to screen or transcript has failed
+	public boolean checkError() {
+		return error != null;
+	}
+
+	public IOException getError() {
+		return error;
+	}
+
+	private void appendScreen(String string) {
+		if (screen == null)
+			return;
+		int from = 0;
+		while (from < string.length()) {
+			if (screenLength == BUFFER_SIZE)
+				handOffScreen();
+			int count = Math.min(string.length() - from, BUFFER_SIZE - screenLength);
+			string.getChars(from, from + count, screenBuffer, screenLength);
+			screenLength += count;
+			from += count;
+		}
+	}
+
+	private void appendTranscript(String string) {
+		if (transcript == null)
+			return;
+		int from = 0;
+		while (from < string.length()) {
+			if (transcriptLength == BUFFER_SIZE)
+				handOffTranscript();
+			int count = Math.min(string.length() - from, BUFFER_SIZE - transcriptLength);
+			string.getChars(from, from + count, transcriptBuffer, transcriptLength);
+			transcriptLength += count;
+			from += count;
+		}
+	}
+
+	//post: the screen buffer is written, or queued for the background writer, and is empty
+	private void handOffScreen() {
+		screenBuffer = handOff(screen, screenBuffer, screenLength);
+		screenLength = 0;
+	}
+
+	private void handOffTranscript() {
+		transcriptBuffer = handOff(transcript, transcriptBuffer, transcriptLength);
+		transcriptLength = 0;
+	}
+
+	//post: returns the buffer to fill next
+	private char[] handOff(Writer target, char[] buffer, int length) {
+		if (background != null)
+			return background.hand(target, buffer, length);
+		write(target, buffer, length);
+		return buffer;
+	}
+
+	private void write(Writer target, char[] buffer, int length) {
+		try {
+			target.write(buffer, 0, length);
+		} catch (IOException e) {
+			error = e;
+		}
+	}
+
+	private void flushWriters() {
+		try {
+			if (screen != null)
+				screen.flush();
+			if (transcript != null)
+				transcript.flush();
+		} catch (IOException e) {
+			error = e;
+		}
+	}
+
+	//post: word is formatted into the end of digits, returns the index of its first char
+	private int format(int word) {
+		int i = digits.length;
+		//worked with negative numbers, so Integer.MIN_VALUE has no positive to overflow into
+		int n = (word < 0) ? word : -word;
+		do {
+			digits[--i] = (char)('0' - n % 10);
+			n /= 10;
+		} while (n != 0);
+		if (word < 0)
+			digits[--i] = '-';
+		return i;
+	}
+
+	//post: the formatted word and a newline are copied to buffer at length, returns the new length
+	private int copyDigits(int start, char[] buffer, int length) {
+		int count = digits.length - start;
+		System.arraycopy(digits, start, buffer, length, count);
+		buffer[length + count] = '\n';
+		return length + count + 1;
+	}
+}
@@ -0,0 +1,524 @@
+/**************************************************************************
+* This class translates a machine level program into a JVM class, so the  *
+* program runs as Java bytecode instead of through the Simpletron's       *
+* dispatch loop. Every reachable word becomes a few bytecodes working on  *
+* the memory array and a local accumulator, runs of words become straight *
+* line code, and BRANCH, BRANCHNEG, and BRANCHZERO become real jumps.     *
+* The class is defined as a hidden class so it can be unloaded and the    *
+* JIT compiles it like any other method.                                  *
+*                                                                         *
+* Input, output, halting, and faults call back into the Simpletron that   *
+* runs the program, so they behave exactly as they do in the interpreter. *
+* Each run of straight line code adds its length to the Simpletron's      *
+* instruction count as it is entered, and a word that fails takes the     *
+* words from it to the end of its run off again, so every run counts the  *
+* instructions the interpreter counts.                                    *
+* Programs that fail ProgramVerifier, for example programs that write     *
+* into their own code, are refused and must be run by the Simpletron.     *
+**************************************************************************/
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+public class BytecodeTranslator {
+	private static final String CLASS_NAME = "TranslatedProgram";
+	private static final String VM_CLASS   = "Simpletron";
+	private static final String RUN_TYPE   = "(LSimpletron;[I)V";
+	private static final String HOOK_TYPE  = "(II)V";
+	private static final String FAULT_HOOK_TYPE = "(III)V";
+
+	//class file version 49 has no stack map frames, which keeps the generated code simple
+	private static final int CLASS_VERSION = 49;
+	private static final int MAX_BRANCH    = 32767;
+
+	//JVM instructions used by the translation
+	private static final int ICONST_0     = 0x03;
+	private static final int DUP          = 0x59;
+	private static final int LADD         = 0x61;
+	private static final int I2L          = 0x85;
+	private static final int GETFIELD     = 0xb4;
+	private static final int PUTFIELD     = 0xb5;
+	private static final int SIPUSH       = 0x11;
+	private static final int LDC_W        = 0x13;
+	private static final int ILOAD_2      = 0x1c;
+	private static final int ALOAD_0      = 0x2a;
+	private static final int ALOAD_1      = 0x2b;
+	private static final int IALOAD       = 0x2e;
+	private static final int ISTORE_2     = 0x3d;
+	private static final int IASTORE      = 0x4f;
+	private static final int IADD         = 0x60;
+	private static final int ISUB         = 0x64;
+	private static final int IMUL         = 0x68;
+	private static final int IDIV         = 0x6c;
+	private static final int IREM         = 0x70;
+	private static final int I2D          = 0x87;
+	private static final int D2I          = 0x8e;
+	private static final int IFEQ         = 0x99;
+	private static final int IFNE         = 0x9a;
+	private static final int IFLT         = 0x9b;
+	private static final int IF_ICMPLT    = 0xa1;
+	private static final int IF_ICMPGT    = 0xa3;
+	private static final int GOTO         = 0xa7;
+	private static final int RETURN       = 0xb1;
+	private static final int INVOKEVIRTUAL = 0xb6;
+	private static final int INVOKESTATIC = 0xb8;
+
+	private int[] image;              //program being translated, it is not modified
+	private ProgramVerifier verifier;
+	private String error;             //reason the program was refused, null if it was translated
+	private byte[] classBytes;
+	private MethodHandle program;     //static void run(Simpletron vm, int[] memory)
+
+	//constant pool under construction
+	private ArrayList<byte[]> constants;
+	private HashMap<String, Integer> constantIndex;
+
+	//method body under construction
+	private ByteBuilder code;
+	private int[] wordOffsets;                  //bytecode offset of each translated word, -1 if it isn't code
+	private int[] runEnds;                      //word just past the run of straight line code each word is in
+	private ArrayList<int[]> jumps;             //{offset of the jump, word it jumps to}
+	private ArrayList<int[]> overflowJumps;     //{offset of the jump, word the overflow is reported at}
+
+	public BytecodeTranslator(int[] image) {
+		this.image = image;
+	}
+
+	//post: returns true if the program was translated and getProgram() can run it,
+	//      otherwise getError() describes why the program was refused
+	public boolean translate() {
+		if (image.length != Simpletron.MEMORY_SIZE) {
+			error = "program can't be translated: only the standard word format is supported";
+			return false;
+		}
+		verifier = new ProgramVerifier(image);
+		if (!verifier.verify()) {
+			error = "program can't be translated: " + verifier.getError();
+			return false;
+		}
+
+		classBytes = buildClass();
+		if (classBytes == null)
+			return false;
+
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classBytes, true);
+			program = lookup.findStatic(lookup.lookupClass(), "run",
+					MethodType.methodType(void.class, Simpletron.class, int[].class));
+		} catch (ReflectiveOperationException | LinkageError e) {
+			error = "translated program could not be loaded: " + e;
+			return false;
+		}
+		return true;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	public byte[] getClassBytes() {
+		return classBytes;
+	}
+
+	//post: returns a handle to static void run(Simpletron vm, int[] memory), null if translate() failed
+	public MethodHandle getProgram() {
+		return program;
+	}
+
+	//post: returns the bytes of a class file containing the translated run method, null if it is too large
+	private byte[] buildClass() {
+		constants = new ArrayList<>();
+		constantIndex = new HashMap<>();
+		byte[] body = buildRunMethod();
+		if (body == null)
+			return null;
+
+		int thisClass  = classConstant(CLASS_NAME);
+		int superClass = classConstant("java/lang/Object");
+		int runName    = utf8Constant("run");
+		int runType    = utf8Constant(RUN_TYPE);
+		int codeName   = utf8Constant("Code");
+
+		ByteBuilder out = new ByteBuilder();
+		out.u4(0xCAFEBABE);
+		out.u2(0);
+		out.u2(CLASS_VERSION);
+		out.u2(constants.size() + 1);
+		for (byte[] constant : constants)
+			out.bytes(constant);
+		out.u2(0x0011);            //public final
+		out.u2(thisClass);
+		out.u2(superClass);
+		out.u2(0);                 //interfaces
+		out.u2(0);                 //fields
+
+		out.u2(1);                 //methods
+		out.u2(0x0009);            //public static
+		out.u2(runName);
+		out.u2(runType);
+		out.u2(1);                 //attributes
+		out.u2(codeName);
+		out.u4(12 + body.length);
+		out.u2(6);                 //max stack
+		out.u2(3);                 //max locals: vm, memory, accumulator
+		out.u4(body.length);
+		out.bytes(body);
+		out.u2(0);                 //exception table
+		out.u2(0);                 //code attributes
+
+		out.u2(0);                 //class attributes
+		return out.toByteArray();
+	}
+
+	//post: returns the bytecode of run, null if the jumps don't fit in the method
+	private byte[] buildRunMethod() {
+		code = new ByteBuilder();
+		wordOffsets = new int[image.length];
+		runEnds = new int[image.length];
+		jumps = new ArrayList<>();
+		overflowJumps = new ArrayList<>();
+
+		//the accumulator starts at 0, like a freshly loaded Simpletron
+		code.u1(ICONST_0);
+		code.u1(ISTORE_2);
+		boolean[] leaders = findLeaders();
+		int runEnd = 0;
+		for (int i = 0; i < image.length; i++) {
+			wordOffsets[i] = -1;
+			if (verifier.isCode(i)) {
+				wordOffsets[i] = code.size(); //jumps land on the count, so every way into a run counts it
+				if (leaders[i]) {
+					runEnd = i + runLength(i, leaders);
+					countInstructions(runEnd - i);
+				}
+				runEnds[i] = runEnd;
+				translateWord(i, image[i] / 1000, image[i] % 1000);
+			}
+		}
+
+		//overflow handlers are placed after the program so the arithmetic stays straight line code
+		HashMap<Integer, Integer> handlers = new HashMap<>();
+		for (int[] jump : overflowJumps) {
+			Integer handler = handlers.get(jump[1]);
+			if (handler == null) {
+				handler = code.size();
+				handlers.put(jump[1], handler);
+				callHook("compiledOverflow", jump[1], runEnds[jump[1] - 1] - jump[1]); //the word before it ran
+				code.u1(RETURN);
+			}
+			if (!patchJump(jump[0], handler))
+				return null;
+		}
+		for (int[] jump : jumps) {
+			if (!patchJump(jump[0], wordOffsets[jump[1]]))
+				return null;
+		}
+		return code.toByteArray();
+	}
+
+	//post: returns which words start a run of straight line code: the first word, the words branches
+	//      jump to, and the words after a branch, a HALT, or a word that isn't code
+	private boolean[] findLeaders() {
+		boolean[] leaders = new boolean[image.length + 1];
+		leaders[0] = true;
+		for (int i = 0; i < image.length; i++) {
+			int operationCode = image[i] / 1000;
+			if (!verifier.isCode(i)) {
+				leaders[i + 1] = true;
+			} else if (operationCode >= Simpletron.BRANCH && operationCode <= Simpletron.HALT) {
+				leaders[i + 1] = true;
+				if (operationCode != Simpletron.HALT)
+					leaders[image[i] % 1000] = true;
+			}
+		}
+		return leaders;
+	}
+
+	//post: returns the number of words in the run starting at start
+	private int runLength(int start, boolean[] leaders) {
+		int end = start + 1;
+		while (end < image.length && !leaders[end])
+			end++;
+		return end - start;
+	}
+
+	//post: vm.instructionsExecuted += count
+	private void countInstructions(int count) {
+		int field = fieldConstant(VM_CLASS, "instructionsExecuted", "J");
+		code.u1(ALOAD_0);
+		code.u1(DUP);
+		code.u1(GETFIELD);
+		code.u2(field);
+		pushInt(count);
+		code.u1(I2L);
+		code.u1(LADD);
+		code.u1(PUTFIELD);
+		code.u2(field);
+	}
+
+	//post: the JVM instructions for one Simpletron instruction are added to code
+	private void translateWord(int address, int operationCode, int operand) {
+		switch (operationCode) {
+			case Simpletron.READ:       callHook("compiledRead", address, runEnds[address] - address);
+										break;
+			case Simpletron.WRITE:      code.u1(ALOAD_0);
+										loadWord(operand);
+										code.u1(INVOKEVIRTUAL);
+										code.u2(methodConstant(VM_CLASS, "compiledWrite", "(I)V"));
+										break;
+			case Simpletron.NEWLINE:    code.u1(ALOAD_0);
+										code.u1(INVOKEVIRTUAL);
+										code.u2(methodConstant(VM_CLASS, "compiledNewline", "()V"));
+										break;
+			case Simpletron.LOAD:       loadWord(operand);
+										code.u1(ISTORE_2);
+										break;
+			case Simpletron.STORE:      code.u1(ALOAD_1);
+										pushInt(operand);
+										code.u1(ILOAD_2);
+										code.u1(IASTORE);
+										code.u1(ICONST_0);
+										code.u1(ISTORE_2);
+										break;
+			case Simpletron.ADD:        arithmetic(IADD, operand, address);
+										break;
+			case Simpletron.SUBTRACT:   arithmetic(ISUB, operand, address);
+										break;
+			case Simpletron.MULTIPLY:   arithmetic(IMUL, operand, address);
+										break;
+			case Simpletron.DIVIDE:     checkDivisor(operand, address);
+										code.u1(ILOAD_2);
+										loadWord(operand);
+										code.u1(IDIV);
+										code.u1(ISTORE_2);
+										break;
+			case Simpletron.REMAINDER:  checkDivisor(operand, address);
+										code.u1(ILOAD_2);
+										loadWord(operand);
+										code.u1(IREM);
+										code.u1(ISTORE_2);
+										break;
+			case Simpletron.POWER:      code.u1(ILOAD_2);
+										code.u1(I2D);
+										loadWord(operand);
+										code.u1(I2D);
+										code.u1(INVOKESTATIC);
+										code.u2(methodConstant("java/lang/Math", "pow", "(DD)D"));
+										code.u1(D2I);
+										code.u1(ISTORE_2);
+										checkOverflow(address + 1);
+										break;
+			case Simpletron.BRANCH:     jump(GOTO, operand);
+										break;
+			case Simpletron.BRANCHNEG:  code.u1(ILOAD_2);
+										jump(IFLT, operand);
+										break;
+			case Simpletron.BRANCHZERO: code.u1(ILOAD_2);
+										jump(IFEQ, operand);
+										break;
+			case Simpletron.HALT:       callHook("compiledHalt", address);
+										code.u1(RETURN);
+										break;
+		}
+	}
+
+	//post: accumulator = accumulator op memory[operand], followed by the overflow check
+	private void arithmetic(int instruction, int operand, int address) {
+		code.u1(ILOAD_2);
+		loadWord(operand);
+		code.u1(instruction);
+		code.u1(ISTORE_2);
+		checkOverflow(address + 1);
+	}
+
+	//post: jumps to the overflow handler for address when the accumulator is out of range. The
+	//      interpreter reports overflow when it fetches the next word, so that address is reported
+	private void checkOverflow(int address) {
+		code.u1(ILOAD_2);
+		code.u1(LDC_W);
+		code.u2(integerConstant(Simpletron.MAX_WORD_SIZE));
+		overflowJumps.add(new int[] {code.size(), address});
+		code.u1(IF_ICMPGT);
+		code.u2(0);
+		code.u1(ILOAD_2);
+		code.u1(LDC_W);
+		code.u2(integerConstant(Simpletron.MIN_WORD_SIZE));
+		overflowJumps.add(new int[] {code.size(), address});
+		code.u1(IF_ICMPLT);
+		code.u2(0);
+	}
+
+	//post: reports a divide by zero from address when memory[operand] is 0
+	private void checkDivisor(int operand, int address) {
+		loadWord(operand);
+		code.u1(IFNE);
+		code.u2(3 + 11 + 1); //past this instruction, the hook call, and the return
+		callHook("compiledDivideByZero", address, runEnds[address] - address);
+		code.u1(RETURN);
+	}
+
+	//post: vm.hook(address, accumulator) is called
+	private void callHook(String hook, int address) {
+		code.u1(ALOAD_0);
+		pushInt(address);
+		code.u1(ILOAD_2);
+		code.u1(INVOKEVIRTUAL);
+		code.u2(methodConstant(VM_CLASS, hook, HOOK_TYPE));
+	}
+
+	//post: vm.hook(address, accumulator, unrun) is called for a word that can fail, unrun is the number of
+	//      words of the run that are not counted if it does
+	private void callHook(String hook, int address, int unrun) {
+		code.u1(ALOAD_0);
+		pushInt(address);
+		code.u1(ILOAD_2);
+		pushInt(unrun);
+		code.u1(INVOKEVIRTUAL);
+		code.u2(methodConstant(VM_CLASS, hook, FAULT_HOOK_TYPE));
+	}
+
+	//post: memory[address] is pushed
+	private void loadWord(int address) {
+		code.u1(ALOAD_1);
+		pushInt(address);
+		code.u1(IALOAD);
+	}
+
+	private void pushInt(int value) {
+		code.u1(SIPUSH);
+		code.u2(value);
+	}
+
+	private void jump(int instruction, int address) {
+		jumps.add(new int[] {code.size(), address});
+		code.u1(instruction);
+		code.u2(0);
+	}
+
+	//post: the jump at offset is pointed at target, false if target is too far away
+	private boolean patchJump(int offset, int target) {
+		int distance = target - offset;
+		if (distance > MAX_BRANCH || distance < -MAX_BRANCH - 1) {
+			error = "program is too large to translate";
+			return false;
+		}
+		code.set2(offset + 1, distance);
+		return true;
+	}
+
+	private int utf8Constant(String value) {
+		Integer index = constantIndex.get("U" + value);
+		if (index != null)
+			return index;
+
+		ByteBuilder entry = new ByteBuilder();
+		entry.u1(1);
+		byte[] text = value.getBytes(StandardCharsets.UTF_8);
+		entry.u2(text.length);
+		entry.bytes(text);
+		return addConstant("U" + value, entry);
+	}
+
+	private int classConstant(String name) {
+		Integer index = constantIndex.get("C" + name);
+		if (index != null)
+			return index;
+
+		ByteBuilder entry = new ByteBuilder();
+		entry.u1(7);
+		entry.u2(utf8Constant(name));
+		return addConstant("C" + name, entry);
+	}
+
+	private int integerConstant(int value) {
+		Integer index = constantIndex.get("I" + value);
+		if (index != null)
+			return index;
+
+		ByteBuilder entry = new ByteBuilder();
+		entry.u1(3);
+		entry.u4(value);
+		return addConstant("I" + value, entry);
+	}
+
+	private int methodConstant(String owner, String name, String type) {
+		return memberConstant(10, "M", owner, name, type);
+	}
+
+	private int fieldConstant(String owner, String name, String type) {
+		return memberConstant(9, "F", owner, name, type);
+	}
+
+	//post: returns the index of a Methodref or Fieldref constant, tag tells which
+	private int memberConstant(int tag, String kind, String owner, String name, String type) {
+		String key = kind + owner + "." + name + type;
+		Integer index = constantIndex.get(key);
+		if (index != null)
+			return index;
+
+		ByteBuilder nameAndType = new ByteBuilder();
+		nameAndType.u1(12);
+		nameAndType.u2(utf8Constant(name));
+		nameAndType.u2(utf8Constant(type));
+		int nameAndTypeIndex = addConstant("N" + name + type, nameAndType);
+
+		ByteBuilder entry = new ByteBuilder();
+		entry.u1(tag);
+		entry.u2(classConstant(owner));
+		entry.u2(nameAndTypeIndex);
+		return addConstant(key, entry);
+	}
+
+	private int addConstant(String key, ByteBuilder entry) {
+		Integer index = constantIndex.get(key);
+		if (index != null)
+			return index;
+		constants.add(entry.toByteArray());
+		constantIndex.put(key, constants.size());
+		return constants.size();
+	}
+
+	//growable big endian byte array
+	private static class ByteBuilder {
+		private byte[] bytes = new byte[256];
+		private int size;
+
+		void u1(int value) {
+			if (size == bytes.length)
+				bytes = Arrays.copyOf(bytes, size * 2);
+			bytes[size++] = (byte)value;
+		}
+
+		void u2(int value) {
+			u1(value >> 8);
+			u1(value);
+		}
+
+		void u4(int value) {
+			u2(value >> 16);
+			u2(value);
+		}
+
+		void bytes(byte[] values) {
+			for (byte value : values)
+				u1(value);
+		}
+
+		void set2(int offset, int value) {
+			bytes[offset]     = (byte)(value >> 8);
+			bytes[offset + 1] = (byte)value;
+		}
+
+		int size() {
+			return size;
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(bytes, size);
+		}
+	}
+}
@@ -0,0 +1,73 @@
+/**************************************************************************
+* What the compiler made of a Simple program compiled in memory: the      *
+* machine code, the symbol table, and every error found. A result is      *
+* never modified, and a successful one can be loaded straight into a      *
+* Simpletron without writing the machine code to a file first:            *
+*                                                                         *
+*   CompilationResult result = new Compiler().compile(source);            *
+*   if (result.isSuccessful())                                            *
+*       simpletron.loadProgram(result);                                   *
+**************************************************************************/
+import java.util.Collections;
+import java.util.List;
+
+public class CompilationResult {
+	private final int[] code;            //the whole memory, code from 0 up and data from the top down
+	private final int codeLength;        //words of code, the data follows after a gap
+	private final WordFormat format;
+	private final SymbolTable table;
+	private final List<Diagnostic> diagnostics;
+	private ProgramImage image;          //made by the first toImage
+
+	//pre:  code and table are never modified after this
+	CompilationResult(int[] code, int codeLength, WordFormat format, SymbolTable table, List<Diagnostic> diagnostics) {
+		this.code = code;
+		this.codeLength = codeLength;
+		this.format = format;
+		this.table = table;
+		this.diagnostics = Collections.unmodifiableList(diagnostics);
+	}
+
+	//post: returns true if the program compiled without errors
+	public boolean isSuccessful() {
+		return diagnostics.isEmpty();
+	}
+
+	//post: returns a copy of the machine code, format.getMemorySize() words. It is only a whole program if
+	//      the compilation was successful
+	public int[] getCode() {
+		return code.clone();
+	}
+
+	public int getWord(int address) {
+		return code[address];
+	}
+
+	public int getCodeLength() {
+		return codeLength;
+	}
+
+	public WordFormat getFormat() {
+		return format;
+	}
+
+	//post: returns a copy of the symbol table of the program, its LINE entries give the address each
+	//      source line's code starts at
+	public SymbolTable getSymbolTable() {
+		return new SymbolTable(table);
+	}
+
+	//post: returns the errors, in the order they were found, empty if the compilation was successful
+	public List<Diagnostic> getDiagnostics() {
+		return diagnostics;
+	}
+
+	//post: returns the image of the machine code, throws IllegalStateException if the compilation failed
+	public synchronized ProgramImage toImage() {
+		if (!isSuccessful())
+			throw new IllegalStateException("the program did not compile");
+		if (image == null)
+			image = new ProgramImage(code, format);
+		return image;
+	}
+}
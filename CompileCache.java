@@ -0,0 +1,367 @@
+/**************************************************************************
+* A directory of compiled programs, so a source that has been compiled    *
+* before is not compiled again. An entry is named after the SHA-256 hash  *
+* of the compiler version, the word format, and the source text, and      *
+* holds the machine code and the symbol table, so a hit gives the same    *
+* CompilationResult as compiling. Only programs that compile are kept.    *
+* Entries are in a binary format, all values big endian:                  *
+*                                                                         *
+*   header   magic "SMLC", u16 version, u16 reserved, int memory size,    *
+*            int operand radix, int largest word, int code length,        *
+*            int data entry count, int table entry count                  *
+*   code     the words from address 0 up to the code length, one int each *
+*   data     the nonzero words after the code, int address and int value  *
+*   table    every symbol table entry, int symbol, u16 type, int location *
+*   checksum CRC32 of everything before it                                *
+*                                                                         *
+* Any number of processes can share a directory. An entry is written to   *
+* a temporary file and then renamed, so it is never seen half written.    *
+* A hit sets the entry's modification time, and when the directory grows  *
+* past its size limit the entries used longest ago are deleted.           *
+*                                                                         *
+* usage: java CompileCache directory [-clear]                             *
+* prints the number and size of the entries, or deletes them all          *
+**************************************************************************/
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+public class CompileCache {
+	public static final int MAGIC   = 0x534D4C43; //"SMLC"
+	public static final int VERSION = 1;
+
+	private static final int HEADER_SIZE      = 32;
+	private static final int DATA_ENTRY_SIZE  = 8;
+	private static final int TABLE_ENTRY_SIZE = 10;
+	private static final int CHECKSUM_SIZE    = 4;
+	private static final String SUFFIX        = ".smc";
+	private static final String TEMP_SUFFIX   = ".tmp";
+	private static final long STALE_MILLIS    = 60 * 60 * 1000; //a temporary file this old was left by a process that died
+
+	private Path directory;
+	private long maxBytes;
+	private AtomicLong size;        //bytes in the directory, as far as this process knows
+
+	private AtomicLong hits = new AtomicLong();
+	private AtomicLong misses = new AtomicLong();
+	private AtomicLong stores = new AtomicLong();
+	private AtomicLong evictions = new AtomicLong();
+	private AtomicLong bytesSaved = new AtomicLong(); //machine code read from the cache instead of compiled
+
+	//post: a cache in directory, which is made if it is not there, that keeps it under maxBytes
+	public CompileCache(String directory, long maxBytes) throws IOException {
+		this.directory = Paths.get(directory);
+		this.maxBytes = maxBytes;
+		Files.createDirectories(this.directory);
+		size = new AtomicLong(scan(false));
+		if (size.get() > maxBytes)
+			evict();
+	}
+
+	//post: returns the key of source compiled for format, 64 hexadecimal digits
+	public static String key(CharSequence source, WordFormat format) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); //every JVM has SHA-256
+		}
+		digest.update(("simpletron compiler " + Compiler.VERSION + " " + format.getMemorySize() + " "
+				+ format.getOperandRadix() + " " + format.getMaxWord() + "\n").getBytes(StandardCharsets.UTF_8));
+		digest.update(StandardCharsets.UTF_8.encode(CharBuffer.wrap(source)));
+
+		StringBuilder key = new StringBuilder(64);
+		for (byte b : digest.digest()) {
+			key.append(Character.forDigit((b >> 4) & 0xf, 16));
+			key.append(Character.forDigit(b & 0xf, 16));
+		}
+		return key.toString();
+	}
+
+	//post: returns the compilation of source for format if it is in the cache, null if it is not or its
+	//      entry is damaged. A damaged entry is deleted
+	public CompilationResult get(CharSequence source, WordFormat format) {
+		return get(key(source, format), format);
+	}
+
+	public CompilationResult get(String key, WordFormat format) {
+		Path path = directory.resolve(key + SUFFIX);
+		byte[] bytes;
+		try {
+			bytes = Files.readAllBytes(path);
+		} catch (IOException e) { //not there, or deleted by another process
+			misses.incrementAndGet();
+			return null;
+		}
+		CompilationResult result;
+		try {
+			result = decode(ByteBuffer.wrap(bytes), format);
+		} catch (IOException e) {
+			delete(path);
+			misses.incrementAndGet();
+			return null;
+		}
+		try {
+			Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (IOException e) {
+			//evicted by another process since it was read, the result is still good
+		}
+		hits.incrementAndGet();
+		bytesSaved.addAndGet(bytes.length);
+		return result;
+	}
+
+	//post: result, the compilation of source, is stored if it was successful
+	public void put(CharSequence source, CompilationResult result) throws IOException {
+		put(key(source, result.getFormat()), result);
+	}
+
+	//post: an entry that is already there is only marked as used, the key is a hash of what it holds
+	public void put(String key, CompilationResult result) throws IOException {
+		if (!result.isSuccessful())
+			return;
+		Path path = directory.resolve(key + SUFFIX);
+		try {
+			Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+			return;
+		} catch (NoSuchFileException e) {
+			//not stored yet
+		}
+		ByteBuffer buffer = encode(result);
+		Path temp = Files.createTempFile(directory, key, TEMP_SUFFIX);
+		try {
+			Files.write(temp, buffer.array());
+			try {
+				Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+		stores.incrementAndGet();
+		if (size.addAndGet(buffer.limit()) > maxBytes)
+			evict();
+	}
+
+	//post: the entries used longest ago are deleted until the directory holds at most nine tenths of
+	//      maxBytes, so the next few stores don't each have to evict again
+	private synchronized void evict() throws IOException {
+		long target = maxBytes - maxBytes / 10;
+		List<Path> paths = new ArrayList<>();
+		List<BasicFileAttributes> attributes = new ArrayList<>();
+		long total = list(paths, attributes, true);
+
+		List<Integer> order = new ArrayList<>();
+		for (int i = 0; i < paths.size(); i++)
+			order.add(i);
+		Collections.sort(order, (a, b) -> attributes.get(a).lastModifiedTime().compareTo(attributes.get(b).lastModifiedTime()));
+		for (int i = 0; i < order.size() && total > target; i++) {
+			int entry = order.get(i);
+			if (delete(paths.get(entry))) {
+				total -= attributes.get(entry).size();
+				evictions.incrementAndGet();
+			}
+		}
+		size.set(total);
+	}
+
+	//post: every entry is deleted
+	public synchronized void clear() throws IOException {
+		List<Path> paths = new ArrayList<>();
+		list(paths, new ArrayList<BasicFileAttributes>(), true);
+		for (Path path : paths)
+			delete(path);
+		size.set(0);
+	}
+
+	//post: returns the bytes the entries take up, stale temporary files are deleted if clean is true
+	private long scan(boolean clean) throws IOException {
+		return list(new ArrayList<Path>(), new ArrayList<BasicFileAttributes>(), clean);
+	}
+
+	//post: the entries and their attributes are added to paths and attributes, returns their total size
+	private long list(List<Path> paths, List<BasicFileAttributes> attributes, boolean clean) throws IOException {
+		long total = 0;
+		long now = System.currentTimeMillis();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+			for (Path path : stream) {
+				String name = path.getFileName().toString();
+				BasicFileAttributes attribute;
+				try {
+					attribute = Files.readAttributes(path, BasicFileAttributes.class);
+				} catch (NoSuchFileException e) {
+					continue; //deleted by another process
+				}
+				if (clean && name.endsWith(TEMP_SUFFIX) && now - attribute.lastModifiedTime().toMillis() > STALE_MILLIS)
+					delete(path);
+				if (!name.endsWith(SUFFIX))
+					continue;
+				paths.add(path);
+				attributes.add(attribute);
+				total += attribute.size();
+			}
+		}
+		return total;
+	}
+
+	//post: returns true if path was deleted by this call
+	private static boolean delete(Path path) {
+		try {
+			return Files.deleteIfExists(path);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	//post: returns result in the entry format, the buffer is ready to be written
+	static ByteBuffer encode(CompilationResult result) {
+		WordFormat format = result.getFormat();
+		int codeLength = result.getCodeLength();
+		int dataCount = 0;
+		for (int i = codeLength; i < format.getMemorySize(); i++) {
+			if (result.getWord(i) != 0)
+				dataCount++;
+		}
+		SymbolTable table = result.getSymbolTable();
+		int tableCount = table.size();
+
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + codeLength * 4 + dataCount * DATA_ENTRY_SIZE
+				+ tableCount * TABLE_ENTRY_SIZE + CHECKSUM_SIZE);
+		buffer.putInt(MAGIC);
+		buffer.putShort((short)VERSION);
+		buffer.putShort((short)0);
+		buffer.putInt(format.getMemorySize());
+		buffer.putInt(format.getOperandRadix());
+		buffer.putInt(format.getMaxWord());
+		buffer.putInt(codeLength);
+		buffer.putInt(dataCount);
+		buffer.putInt(tableCount);
+		for (int i = 0; i < codeLength; i++)
+			buffer.putInt(result.getWord(i));
+		for (int i = codeLength; i < format.getMemorySize(); i++) {
+			if (result.getWord(i) != 0) {
+				buffer.putInt(i);
+				buffer.putInt(result.getWord(i));
+			}
+		}
+		for (TableEntry entry : table.entries()) {
+			buffer.putInt(entry.getSymbol());
+			buffer.putShort((short)entry.getType());
+			buffer.putInt(entry.getLocation());
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(buffer.array(), 0, buffer.position());
+		buffer.putInt((int)crc.getValue());
+		buffer.flip();
+		return buffer;
+	}
+
+	//post: returns the compilation in buffer, throws IOException if it is damaged or not for format
+	static CompilationResult decode(ByteBuffer buffer, WordFormat format) throws IOException {
+		if (buffer.limit() < HEADER_SIZE + CHECKSUM_SIZE || buffer.getInt(0) != MAGIC)
+			throw new IOException("not a compile cache entry");
+		int version = buffer.getShort(4) & 0xffff;
+		if (version != VERSION)
+			throw new IOException("unsupported compile cache entry version " + version);
+		if (buffer.getInt(8) != format.getMemorySize() || buffer.getInt(12) != format.getOperandRadix()
+				|| buffer.getInt(16) != format.getMaxWord())
+			throw new IOException("compile cache entry is for another format");
+		int codeLength = buffer.getInt(20);
+		int dataCount  = buffer.getInt(24);
+		int tableCount = buffer.getInt(28);
+		int memorySize = format.getMemorySize();
+		if (codeLength < 0 || codeLength > memorySize || dataCount < 0 || dataCount > memorySize
+				|| tableCount < 0 || tableCount > buffer.limit() / TABLE_ENTRY_SIZE)
+			throw new IOException("compile cache entry has the wrong length");
+		long end = HEADER_SIZE + codeLength * 4L + dataCount * (long)DATA_ENTRY_SIZE + tableCount * (long)TABLE_ENTRY_SIZE;
+		if (buffer.limit() != end + CHECKSUM_SIZE)
+			throw new IOException("compile cache entry has the wrong length");
+
+		CRC32 crc = new CRC32();
+		ByteBuffer covered = buffer.duplicate();
+		covered.position(0).limit((int)end);
+		crc.update(covered);
+		if ((int)crc.getValue() != buffer.getInt((int)end))
+			throw new IOException("compile cache entry checksum does not match");
+
+		int[] code = new int[memorySize];
+		int position = HEADER_SIZE;
+		for (int i = 0; i < codeLength; i++, position += 4)
+			code[i] = buffer.getInt(position);
+		for (int i = 0; i < dataCount; i++, position += DATA_ENTRY_SIZE) {
+			int address = buffer.getInt(position);
+			if (address < 0 || address >= memorySize)
+				throw new IOException("compile cache entry data address out of range");
+			code[address] = buffer.getInt(position + 4);
+		}
+		SymbolTable table = new SymbolTable();
+		for (int i = 0; i < tableCount; i++, position += TABLE_ENTRY_SIZE)
+			table.put(new TableEntry(buffer.getInt(position), (char)buffer.getShort(position + 4), buffer.getInt(position + 6)));
+		return new CompilationResult(code, codeLength, format, table, new ArrayList<Diagnostic>());
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getStores() {
+		return stores.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	//post: returns the bytes of machine code the hits read from the cache instead of compiling
+	public long getBytesSaved() {
+		return bytesSaved.get();
+	}
+
+	//post: writes the hits, misses, stores, evictions, and bytes saved so far
+	public void writeStatistics(PrintWriter writer) {
+		long lookups = hits.get() + misses.get();
+		writer.printf("compile cache: %d hits, %d misses (%.1f%% hit), %d stored, %d evicted, %d bytes saved%n",
+				hits.get(), misses.get(), lookups == 0 ? 0 : 100.0 * hits.get() / lookups, stores.get(), evictions.get(),
+				bytesSaved.get());
+		writer.flush();
+	}
+
+	public static void main(String [] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("usage: java CompileCache directory [-clear]");
+			return;
+		}
+		CompileCache cache = new CompileCache(args[0], Long.MAX_VALUE);
+		if (args.length > 1 && args[1].equals("-clear")) {
+			cache.clear();
+			return;
+		}
+		List<Path> paths = new ArrayList<>();
+		long total = cache.list(paths, new ArrayList<BasicFileAttributes>(), true);
+		System.out.println(paths.size() + " entries, " + total + " bytes");
+	}
+}
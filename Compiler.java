@@ -1,9 +1,19 @@
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Scanner;
-import java.io.File;
+import java.util.List;
 import java.io.PrintWriter;
-import java.io.FileNotFoundException;
-import java.util.Stack;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class Compiler {
 	//valid language commands
@@ -15,403 +25,870 @@ public class Compiler {
 	private static final String IF     = "if";
 	private static final String END    = "end";
 
+	private static final String[] RELATIONAL_OPERATORS = {"==", "!=", ">=", "<=", ">", "<"};
+
+	//changes whenever the code compiled for a program does, so CompileCache does not give old code
+	public static final int VERSION = 2; //2: let expressions are parsed into a tree, ^ compiles to POWER
+
+	private static final int PARALLEL_LINES = 4096; //programs with fewer lines are parsed as they are compiled
+	private static final int PARSE_CHUNK    = 512;  //lines parsed by one task
+
+	//parses the lines from start up to end into parsed, by halves down to PARSE_CHUNK lines. Line i of
+	//source runs from lineStarts[i] up to lineEnds[i]
+	private static class ParseTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private CharSequence source;
+		private int[] lineStarts;
+		private int[] lineEnds;
+		private ParsedLine[] parsed;
+		private int start;
+		private int end;
+
+		ParseTask(CharSequence source, int[] lineStarts, int[] lineEnds, ParsedLine[] parsed, int start, int end) {
+			this.source = source;
+			this.lineStarts = lineStarts;
+			this.lineEnds = lineEnds;
+			this.parsed = parsed;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start <= PARSE_CHUNK) {
+				Lexer lexer = new Lexer();
+				for (int i = start; i < end; i++)
+					parsed[i] = parseLine(lexer, source, lineStarts[i], lineEnds[i]);
+				return;
+			}
+			int middle = (start + end) >>> 1;
+			invokeAll(new ParseTask(source, lineStarts, lineEnds, parsed, start, middle),
+					new ParseTask(source, lineStarts, lineEnds, parsed, middle, end));
+		}
+	}
+
 	private SymbolTable table; //location where all identifiers of the program are stored, i.e line numbers, variables, constants
-	private int [] flags; //used for goto commands
+	private int [] fixupAddresses; //goto instructions whose line was not known yet, resolved by the second pass
+	private int [] fixupLines;     //line each of those goto instructions jumps to
+	private int [] fixupSources;   //source line each of those goto instructions is on
+	private int [] fixupStatements; //Simple line number of the statement each of them is in
+	private int [] fixupColumns;    //column of the source line each of those goto targets is at
+	private int fixupCount;
 	private int [] machineCodeArr; //temporary store for machine code to be written
 	private int instructionCounter; //location in machineCodeArr
 	private int dataCounter;        //location in machineCodeArr
+	private boolean memoryFull;     //true once the code has grown into the data
+	private WordFormat format;
+	private int radix;              //an instruction is operation code * radix + operand
 	private String fileName;	    //name on file being compiled
+	private boolean objectOutput;   //true to write the machine code as an object file instead of text, one word per line
+	private List<Diagnostic> diagnostics; //errors found in the program being compiled
+	private int sourceLine;         //line of the source being compiled, from 1
+	private int lineNumber;         //Simple line number of the statement being compiled, -1 until it is known
+	private int targetColumn;       //column of the goto target of the statement being compiled
+	private boolean parallelParsing = true; //true to parse large programs on the common fork-join pool
+	private boolean repeatedLines;  //true if a line number is used twice
+
+	//set while patchLine compiles a line into a whole program, see patchLine
+	private long[] owners;          //key of the entry each data address belongs to, 0 for results of operations, null while not patching
+	private boolean patchFailed;    //true once the line does not fit the layout of the one it replaces
+	private boolean shared;         //true if the table and machine code belong to a CompilationResult
+	private StringBuilder sourceBuffer; //source read from a Reader, reused by every program
+	private CharBuffer sourceChars;     //source decoded from a file, reused by every program
+	private CharsetDecoder decoder;
+	private Lexer lexer = new Lexer();  //lexes the lines that are parsed as they are compiled
+	private ParsedLine parsedLine = new ParsedLine(); //each of those lines parsed
+	private int[] lineStarts = new int[64]; //where each line of the program starts in its source
+	private int[] lineEnds = new int[64];   //and where it ends, not including the line separator
+	private int[] letLocations = new int[16]; //where the value of each node of a let is, see compileLetCommand
+	private CompileCache cache;     //programs compiled before, null to compile every program
 
 
 	public Compiler() {
-		table = new SymbolTable();
-		flags = new int[1000];
-		machineCodeArr = new int[1000];
+		this(WordFormat.STANDARD);
+	}
+
+	//post: a compiler for a Simpletron with memory and words in format
+	public Compiler(WordFormat format) {
+		this.format = format;
+		radix = format.getOperandRadix();
+		reset();
+	}
+
+	//post: the compiler is ready for a new program. The table and the machine code of the last one are
+	//      cleared and reused, unless a CompilationResult holds them
+	private void reset() {
+		if (table == null || shared) {
+			table = new SymbolTable();
+			machineCodeArr = new int[format.getMemorySize()];
+			diagnostics = new ArrayList<>();
+			shared = false;
+		} else {
+			table.clear();
+			//only the code at the bottom and the data at the top were written
+			Arrays.fill(machineCodeArr, 0, Math.min(instructionCounter, machineCodeArr.length), 0);
+			Arrays.fill(machineCodeArr, dataCounter + 1, machineCodeArr.length, 0);
+			diagnostics.clear();
+		}
+		if (fixupAddresses == null) {
+			fixupAddresses = new int[16];
+			fixupLines = new int[16];
+			fixupSources = new int[16];
+			fixupStatements = new int[16];
+			fixupColumns = new int[16];
+		}
+		fixupCount = 0;
 
-		Arrays.fill(flags, -1);
 		instructionCounter = 0;
-		dataCounter = 999;
+		dataCounter = format.getMemorySize() - 1;
+		memoryFull = false;
+		repeatedLines = false;
 	}
 
 	//pre: file exists and contains valid syntax for a simple program
-	//post: file created with machine level instructions contained in it
+	//post: file created with machine level instructions contained in it, the errors are printed if there are any
 	public void compileProgram(String fileName) {
 		this.fileName = fileName;
-		Scanner scanner;
+		CharBuffer source;
 		try {
-			scanner = new Scanner(new File(fileName));
-		} catch (FileNotFoundException e) {System.out.println("Failed to open source file"); return;}
+			source = readSource(fileName);
+		} catch (IOException e) {System.out.println("Failed to open source file"); return;}
+		compileCached(source);
 
-		//reads each line and compiles it
-		boolean isValid = true;
-		while (scanner.hasNext()) {
-			if (!compileLine(scanner.nextLine()))
-				isValid = false;
+		for (Diagnostic diagnostic : diagnostics)
+			System.out.println(diagnostic);
+		if (!diagnostics.isEmpty()) {
+			System.out.println("\nCompilation Failed!");
+		} else {
+			try {
+				writeMachineCode();
+			} catch (IOException io) {System.out.println("failed to write file");}
+			System.out.println("Compilation Successful!");
 		}
+	}
+
+	//post: like compileProgram, but nothing is printed. Returns the errors, the machine code is written
+	//      only if there are none. Throws IOException if the source can't be read or the code can't be written
+	public List<Diagnostic> compileFile(String fileName) throws IOException {
+		this.fileName = fileName;
+		compileCached(readSource(fileName));
+		if (diagnostics.isEmpty())
+			writeMachineCode();
+		return new ArrayList<>(diagnostics);
+	}
+
+	//post: returns the program read from reader compiled, nothing is written to a file or printed
+	public CompilationResult compile(Reader reader) throws IOException {
+		read(reader);
+		return compile(sourceBuffer);
+	}
 
+	//post: returns the program in source compiled, nothing is written to a file or printed. Lines of
+	//      nothing but whitespace at the end of source are ignored
+	public CompilationResult compile(CharSequence source) {
+		compileCached(source);
+		shared = true;
+		return new CompilationResult(machineCodeArr, instructionCounter, format, table, diagnostics);
+	}
+
+	//post: returns the contents of fileName, decoded in the default charset from the file mapped into
+	//      memory. The characters are in a buffer that is reused by the next program
+	private CharBuffer readSource(String fileName) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+			MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (decoder == null) {
+				decoder = Charset.defaultCharset().newDecoder()
+						.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+			}
+			int capacity = (int)Math.ceil(bytes.remaining() * (double)decoder.maxCharsPerByte()) + 1;
+			if (sourceChars == null || sourceChars.capacity() < capacity)
+				sourceChars = CharBuffer.allocate(capacity);
+			sourceChars.clear();
+			decoder.reset();
+			decoder.decode(bytes, sourceChars, true);
+			decoder.flush(sourceChars);
+			sourceChars.flip();
+			return sourceChars;
+		}
+	}
+
+	//post: sourceBuffer holds everything left in reader
+	private void read(Reader reader) throws IOException {
+		if (sourceBuffer == null)
+			sourceBuffer = new StringBuilder();
+		sourceBuffer.setLength(0);
+		char[] buffer = new char[8192];
+		for (int count; (count = reader.read(buffer)) != -1; )
+			sourceBuffer.append(buffer, 0, count);
+	}
+
+	//post: like compileSource, but the program is taken from the cache if it is in it, and put in it if
+	//      it compiles
+	private void compileCached(CharSequence source) {
+		if (cache == null) {
+			compileSource(source);
+			return;
+		}
+		String key = CompileCache.key(source, format);
+		CompilationResult cached = cache.get(key, format);
+		if (cached != null) {
+			reset();
+			table = cached.getSymbolTable(); //a copy, the cached result does not change
+			machineCodeArr = cached.getCode();
+			instructionCounter = cached.getCodeLength();
+			shared = true; //the data counter does not match the code, so the next reset must not reuse it
+			return;
+		}
+		compileSource(source);
+		if (diagnostics.isEmpty()) {
+			try {
+				cache.put(key, new CompilationResult(machineCodeArr, instructionCounter, format, table, diagnostics));
+			} catch (IOException e) {
+				//a cache that can't be written only means the program is compiled again next time
+			}
+		}
+	}
+
+	//post: machineCodeArr, table, and diagnostics hold the program in source compiled
+	private void compileSource(CharSequence source) {
+		reset();
+		int lines = splitLines(source);
+
+		//parsing a line does not depend on the others, so a large program is parsed in parallel first.
+		//Compiling assigns addresses and must go in order
+		ParsedLine[] parsed = null;
+		if (parallelParsing && lines >= PARALLEL_LINES) {
+			parsed = new ParsedLine[lines];
+			ForkJoinPool.commonPool().invoke(new ParseTask(source, lineStarts, lineEnds, parsed, 0, lines));
+		}
+
+		//compiles each line, a line parsed here is parsed into the same ParsedLine as the one before
+		for (int i = 0; i < lines; i++) {
+			sourceLine = i + 1;
+			if (parsed == null)
+				parseLine(lexer, source, lineStarts[i], lineEnds[i], parsedLine);
+			compileLine(parsed != null ? parsed[i] : parsedLine);
+			if (memoryFull) {
+				addMemoryFull();
+				break;
+			}
+		}
+		resolveFixups();
+	}
+
+	//post: lineStarts and lineEnds hold where each line of source starts and ends, as lines splits them,
+	//      returns the number of lines
+	private int splitLines(CharSequence source) {
+		int end = textEnd(source);
+		int count = 0;
+		for (int start = 0; start < end; start = nextLine(source, lineEnds[count - 1])) {
+			if (count == lineStarts.length) {
+				lineStarts = Arrays.copyOf(lineStarts, count * 2);
+				lineEnds = Arrays.copyOf(lineEnds, count * 2);
+			}
+			lineStarts[count] = start;
+			lineEnds[count++] = lineEnd(source, start);
+		}
+		return count;
+	}
+
+	//post: returns the lines of source, as Scanner.nextLine splits them. Lines of nothing but whitespace
+	//      at the end of source are left out
+	static List<String> lines(CharSequence source) {
+		int end = textEnd(source);
+		List<String> lines = new ArrayList<>();
+		for (int start = 0; start < end; ) {
+			int lineEnd = lineEnd(source, start);
+			lines.add(source.subSequence(start, lineEnd).toString());
+			start = nextLine(source, lineEnd);
+		}
+		return lines;
+	}
+
+	//post: returns just past the last character of source that isn't whitespace
+	private static int textEnd(CharSequence source) {
+		int end = source.length();
+		while (end > 0 && Character.isWhitespace(source.charAt(end - 1)))
+			end--;
+		return end;
+	}
+
+	//post: returns where the line that starts at start ends, at its line separator or the end of source
+	private static int lineEnd(CharSequence source, int start) {
+		int lineEnd = start;
+		while (lineEnd < source.length() && !isLineSeparator(source.charAt(lineEnd)))
+			lineEnd++;
+		return lineEnd;
+	}
+
+	//post: returns where the line after the one that ends at lineEnd starts
+	private static int nextLine(CharSequence source, int lineEnd) {
+		if (lineEnd + 1 < source.length() && source.charAt(lineEnd) == '\r' && source.charAt(lineEnd + 1) == '\n')
+			return lineEnd + 2;
+		return lineEnd + 1;
+	}
+
+	//post: returns the lines, parsed already, compiled. The address the code of each line starts at is put in
+	//      codeStarts and the address its data starts at in dataTops, each has an extra entry for the end
+	CompilationResult link(List<ParsedLine> lines, int[] codeStarts, int[] dataTops) {
+		reset();
+		int i = 0;
+		for (; i < lines.size(); i++) {
+			codeStarts[i] = instructionCounter;
+			dataTops[i] = dataCounter;
+			sourceLine = i + 1;
+			compileLine(lines.get(i));
+			if (memoryFull) {
+				addMemoryFull();
+				break;
+			}
+		}
+		codeStarts[i] = instructionCounter;
+		dataTops[i] = dataCounter;
+		resolveFixups();
+		shared = true;
+		return new CompilationResult(machineCodeArr, instructionCounter, format, table, diagnostics);
+	}
+
+	//post: returns true if any line of the program linked last can be patched, see patchLine. Programs that
+	//      repeat a line number can't, what a goto to it refers to then depends on where it is
+	boolean isPatchable() {
+		return !repeatedLines;
+	}
+
+	//pre:  code and table are a successful compilation of a patchable program, owners holds the key (see
+	//      SymbolTable.key) of the entry each data address belongs to, 0 for the results of operations. The line replaced has its code from codeStart up to
+	//      codeEnd and its data from dataTop down to dataEnd, not including dataEnd
+	//post: line is compiled into code in place of the line replaced, and returns true, if it has exactly the
+	//      same layout: the same line number, as many instructions, and the same data in the same order. Then
+	//      code is what compiling the whole program again would give. Returns false otherwise, code may
+	//      have been partly written. table is not changed
+	boolean patchLine(ParsedLine line, int[] code, SymbolTable table, long[] owners, int codeStart, int codeEnd,
+			int dataTop, int dataEnd) {
+		if (line.error != null || !line.hasLine)
+			return false;
+		if (table.getLocation(line.lineNumber, TableEntry.LINE) != codeStart)
+			return false;
+
+		this.table = table;
+		machineCodeArr = code;
+		shared = true; //the next program gets a table and machine code of its own
+		instructionCounter = codeStart;
+		dataCounter = dataTop;
+		memoryFull = false;
+		this.owners = owners;
+		patchFailed = false;
+		try {
+			compileLine(line);
+		} finally {
+			this.owners = null;
+		}
+		return !patchFailed && !memoryFull && instructionCounter == codeEnd && dataCounter == dataEnd;
+	}
+
+	private void addMemoryFull() {
+		diagnostics.add(new Diagnostic(sourceLine, -1, "Program does not fit in memory: the code and the data "
+				+ "of the program need more than " + format.getMemorySize() + " words"));
+	}
+
+	//post: the gotos to lines after them point at those lines, or there is a Diagnostic for each line that is not there
+	private void resolveFixups() {
 		//second pass, any unresolved references are set here. example: goto a place in the program that the compiler did not know 
 		//existed on the first pass- it was a forward reference
-		for (int i = 0; i < flags.length; i++) {
-			if (flags[i] != -1) {
-				//flags[i] is the line that was referenced to by the goto statement
-				TableEntry entry = table.get(flags[i], TableEntry.LINE);
-				machineCodeArr[i] += entry.getLocation();
+		for (int i = 0; i < fixupCount && !memoryFull; i++) {
+			int location = table.getLocation(fixupLines[i], TableEntry.LINE);
+			if (location == SymbolTable.NOT_FOUND) {
+				diagnostics.add(new Diagnostic(fixupSources[i], fixupColumns[i], fixupStatements[i],
+						"goto to line " + fixupLines[i] + ", which does not exist"));
+			} else {
+				machineCodeArr[fixupAddresses[i]] += location;
 			}
 		}
-		if (!isValid) {
-			System.out.println("\nCompilation Failed!");
-		} else {
-			writeMachineCode();
-			System.out.println("Compilation Successful!");
-		}
+	}
+
+	//post: returns true if c ends a line, as it does for Scanner.nextLine
+	private static boolean isLineSeparator(char c) {
+		return c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029' || c == '\u0085';
 	}
 
 	//pre: symbol, and type
-	//post: returns tableEntry if it is in the table, if not in table put it in table and return it. If it is a constant
-	//      store the constant value in the machineCodeArr
-	private TableEntry getEntry(int symbol, char type) {
-		TableEntry entry = table.get(symbol, type);
-		if (entry == null) { //not in the table yet
-			entry = new TableEntry(symbol, type, dataCounter--);
-			table.put(entry);
-		}
-		if (entry.getType() == TableEntry.CONSTANT)
-			machineCodeArr[entry.getLocation()] = entry.getSymbol(); //stores the constant value in the machine code
-
-		return entry;
-	}
-
-	//pre: syntactically correct program code line
-	//post: machineCodeArr filled with some machine instructions
-	//      true if no errors in input
-	private boolean compileLine(String line) {
-		boolean isValid = true;
-		String [] tokens = getTokens(line);
-		//each line must at least contain two tokens; ex: line# and command
-		if (tokens.length < 2) {
-			System.out.print("Syntax error: statement format error on line #");
-			isValid = false;
+	//post: returns the location of symbol if it is in the table, if not in table put it in table and return it. If it is
+	//      a constant store the constant value in the machineCodeArr
+	private int getEntry(int symbol, char type) {
+		int location;
+		if (owners != null) { //patching, the table is the whole program's
+			location = table.getLocation(symbol, type);
+			if (location == SymbolTable.NOT_FOUND) {
+				patchFailed = true;
+				location = 0;
+			}
+			//data is allocated from the top down, so entries at dataCounter or below were not allocated yet
+			else if (location <= dataCounter)
+				patchAllocation(SymbolTable.key(symbol, type));
+		} else {
+			//looked up and entered in one probe, the data word is only taken if it was not in the table
+			location = table.putIfAbsent(symbol, type, nextData());
+			if (location == SymbolTable.NOT_FOUND)
+				location = allocateData();
 		}
+		if (type == TableEntry.CONSTANT)
+			machineCodeArr[location] = symbol; //stores the constant value in the machine code
 
-		int lineNumber = 0;
-	    try {
-	    	lineNumber = Integer.parseInt(tokens[0]);
-	    } catch (NumberFormatException e) {
-	    	System.out.println("No line number found");
-	    	return false;
-	    }
-	    //adds line to the symbol table
+		return location;
+	}
+
+	//post: the line is compiled into machineCodeArr, returns true if it has no errors. A Diagnostic is
+	//      added if it has
+	private boolean compileLine(ParsedLine line) {
+		lineNumber = line.lineNumber;
+		targetColumn = line.targetColumn;
+		//adds line to the symbol table
 		//*very important for goto statements*
-		table.put(new TableEntry(lineNumber, TableEntry.LINE, instructionCounter));
-		String command = tokens[1];
+		if (line.hasLine && owners == null) {
+			if (table.put(line.lineNumber, TableEntry.LINE, instructionCounter) != SymbolTable.NOT_FOUND)
+				repeatedLines = true;
+		}
 
-		if (command.equals(REMARK)) 
+		switch (line.command) {
+			case INPUT:
+				if (line.error == null)
+					emit(Simpletron.READ*radix + getEntry(line.symbol, TableEntry.VARIABLE));
+				break;
+			case PRINT:
+				if (line.error == null)
+					emit(Simpletron.WRITE*radix + getEntry(line.symbol, TableEntry.VARIABLE));
+				break;
+			case LET:
+				compileLetCommand(line);
+				break;
+			case GOTO:
+				if (line.error == null)
+					compileGoToCommand(line.target, Simpletron.BRANCH);
+				break;
+			case IF:
+				compileIfCommand(line);
+				break;
+			case END:
+				emit(Simpletron.HALT*radix);
+				break;
+			default:
+				break;
+		}
+
+		if (line.error != null) {
+			diagnostics.add(new Diagnostic(sourceLine, line.errorColumn, line.lineNumber, line.error));
+			return false;
+		}
+		return true;
+	}
+
+	//post: returns the line of source from start up to end lexed and parsed, see the parseLine below
+	static ParsedLine parseLine(Lexer lexer, CharSequence source, int start, int end) {
+		ParsedLine parsed = new ParsedLine();
+		parseLine(lexer, source, start, end, parsed);
+		return parsed;
+	}
+
+	//post: parsed holds the line of source from start up to end lexed and parsed, and nothing it held
+	//      before. Nothing in a compiler is read or changed, so lines can be parsed on any thread and in
+	//      any order, each thread with a lexer of its own
+	static void parseLine(Lexer lexer, CharSequence source, int start, int end, ParsedLine parsed) {
+		parsed.clear();
+		int words = lexer.words(source, start, start, end);
+
+		if (words == 0 || lexer.kinds[0] != Lexer.NUMBER) {
+			parsed.fail("No line number found", words == 0 ? 1 : lexer.column(0));
+			return;
+		}
+		parsed.lineNumber = lexer.values[0];
+		//each line must at least contain two tokens; ex: line# and command
+		if (words < 2) {
+			parsed.fail("Syntax error: statement format error", lexer.columnOf(lexer.ends[0]));
+			return;
+		}
+		parsed.hasLine = true;
+
+		if (lexer.is(1, REMARK)) 
 		{
 		 //ignore the rest, its just a comment for the developer
+			parsed.command = ParsedLine.Command.REMARK;
 		}
-		else if (command.equals(INPUT)) 
+		else if (lexer.is(1, INPUT)) 
 		{
-			isValid = compileInputCommand(tokens);
+			parsed.command = ParsedLine.Command.INPUT;
+			parseVariable(lexer, words, INPUT, parsed);
 		}
-		else if (command.equals(PRINT)) 
+		else if (lexer.is(1, PRINT)) 
 		{
-			isValid = compilePrintCommand(tokens);
+			parsed.command = ParsedLine.Command.PRINT;
+			parseVariable(lexer, words, PRINT, parsed);
 		}
-		else if (command.equals(LET))
+		else if (lexer.is(1, LET))
 		{
-			String expression = line.substring(line.indexOf("let")+3); //the substring after "let"
-			isValid = compileLetCommand(expression);
+			parsed.command = ParsedLine.Command.LET;
+			parseLetCommand(lexer, source, lexer.ends[1], end, parsed); //the statement after "let"
 	    } 
-	    else if (command.equals(GOTO))
+	    else if (lexer.is(1, GOTO))
 	    {
-	    	compileGoToCommand(Integer.parseInt(tokens[2]), Simpletron.BRANCH);
+	    	parsed.command = ParsedLine.Command.GOTO;
+	    	if (words < 3 || lexer.kinds[2] != Lexer.NUMBER) {
+	    		parsed.fail("Syntax error", words < 3 ? lexer.columnOf(lexer.ends[1]) : lexer.column(2));
+	    		return;
+	    	}
+	    	parsed.target = lexer.values[2];
+	    	parsed.targetColumn = lexer.column(2);
 	    }
-	    else if (command.equals(IF))
+	    else if (lexer.is(1, IF))
 	    {
-	    	isValid = compileIfCommand(tokens);
+	    	parsed.command = ParsedLine.Command.IF;
+	    	parseIfCommand(lexer, words, parsed);
 	    }
-	    else if (command.equals(END)) 
+	    else if (lexer.is(1, END)) 
 	    {
-			machineCodeArr[instructionCounter++] = Simpletron.HALT*1000;
+	    	parsed.command = ParsedLine.Command.END;
 		} 
 	    else 
 	    {
-			System.out.print("Command not valid on line #");
-			isValid = false;
-		}
-
-		//adds line number to unfinished compiler message in helper compile methods
-		if (!isValid)
-			System.out.println(lineNumber);
-
-		return isValid;
-	}
-
-	//post: input command compiled if valid
-	private boolean compileInputCommand(String[] tokens) {
-		//there must be a variable after the command
-		if (tokens.length < 3) {
-			System.out.print("Syntax error: no variable after input command on line #");
-			return false;
-		}
-		if (tokens[2].length() != 1) {
-			System.out.print("Syntax error: invalid variable format on line #");
-			return false;
+			parsed.fail("Command not valid", lexer.column(1));
 		}
-		int symbol = (int)tokens[2].charAt(0);
-
-		TableEntry entry = getEntry(symbol, TableEntry.VARIABLE);
-		int instruction = Simpletron.READ*1000 + entry.getLocation();
-		machineCodeArr[instructionCounter++] = instruction;
-		return true;
 	}
 
-	//post: print command compiled and added to machineCodeArr if valid
-	private boolean compilePrintCommand(String[] tokens) {
+	//post: the variable of an input or print command is parsed
+	private static void parseVariable(Lexer lexer, int words, String command, ParsedLine parsed) {
 		//there must be a variable after the command
-		if (tokens.length < 3) {
-			System.out.print("Syntax error: no variable after print command on line #");
-			return false;
+		if (words < 3) {
+			parsed.fail("Syntax error: no variable after " + command + " command", lexer.columnOf(lexer.ends[1]));
+			return;
 		}
-		if (tokens[2].length() != 1) {
-			System.out.print("Syntax error: invalid variable format on line #");
-			return false;
+		if (lexer.length(2) != 1) {
+			parsed.fail("Syntax error: invalid variable format", lexer.column(2));
+			return;
 		}
-
-		int symbol = (int)tokens[2].charAt(0);
-		
-		TableEntry entry = getEntry(symbol, TableEntry.VARIABLE);
-		int instruction = Simpletron.WRITE*1000 + entry.getLocation();
-		machineCodeArr[instructionCounter++] = instruction;
-		return true;
+		parsed.symbol = (int)lexer.first(2);
 	}
 
 	//pre: lineNumber to goto and the specific goto command code Simpletron.BRANCH, BRANCHNEG, or BRANCHZERO
 	//post: compiled goto command added to machineCodeArr
 	private void compileGoToCommand(int lineNumber, int command) {
-		TableEntry entry = table.get(lineNumber, TableEntry.LINE);
-		if (entry == null) { //not in the table yet, it must be a forward reference....the second pass will get it
-			flags[instructionCounter] = lineNumber;
-			machineCodeArr[instructionCounter++] = command*1000;
+		int location = table.getLocation(lineNumber, TableEntry.LINE);
+		if (location == SymbolTable.NOT_FOUND && owners != null) { //patching, the whole program is in the table and the line is not
+			patchFailed = true;
+			return;
+		}
+		if (location == SymbolTable.NOT_FOUND) { //not in the table yet, it must be a forward reference....the second pass will get it
+			addFixup(instructionCounter, lineNumber);
+			emit(command*radix);
 		} else {
-			int instruction = command*1000 + entry.getLocation();
-			machineCodeArr[instructionCounter++] = instruction;
+			int instruction = command*radix + location;
+			emit(instruction);
 		}
 	}
 
 
 	//pre: operandLeft, operandRight == variable or constant, operator == "<=, >=, !=, ==, >, <", and location for control to be transferred if true
-	//post: compiled if command added to machineCodeArr
-	private boolean compileIfCommand(String [] tokens) {
-		if (tokens.length < 7) {
-			System.out.println("input error on line #");
-			return false;
+	//post: the if command is parsed, an operand is only kept if the ones before it were valid
+	private static void parseIfCommand(Lexer lexer, int words, ParsedLine parsed) {
+		if (words < 7) {
+			parsed.fail("input error", lexer.columnOf(lexer.ends[words - 1]));
+			return;
 		}
 
-		String operandLeft = tokens[2];
-	    String operator = tokens[3];
-	    String operandRight = tokens[4];
-	    if (!tokens[5].equals(GOTO)) {
-	    	System.out.print("If without goto on line #");
-	    	return false;
+		int operandLeft = 2;
+	    parsed.operator = relationalOperator(lexer, 3);
+	    int operandRight = 4;
+	    if (!lexer.is(5, GOTO)) {
+	    	parsed.fail("If without goto", lexer.column(5));
+	    	return;
 	    }
-	    int location = 0;
-	    try {
-	    	location = Integer.parseInt(tokens[6]);
-	    } catch (NumberFormatException e) {
-	    	System.out.print("Line number format error on line #");
-	    	return false;
+	    if (lexer.kinds[6] != Lexer.NUMBER) {
+	    	parsed.fail("Line number format error", lexer.column(6));
+	    	return;
 	    }
-
-		TableEntry leftEntry;
-		TableEntry rightEntry;
-
-		//loads the operand entries from the symbol table, 
-		if (Character.isDigit(operandLeft.charAt(0)) || operandLeft.charAt(0) == '-') {
-			leftEntry = getEntry(Integer.parseInt(operandLeft), TableEntry.CONSTANT);
+	    parsed.target = lexer.values[6];
+	    parsed.targetColumn = lexer.column(6);
+
+		//loads the operands, each one is entered in the symbol table even if what follows it is not valid
+		if (Character.isDigit(lexer.first(operandLeft)) || lexer.first(operandLeft) == '-') {
+			if (lexer.kinds[operandLeft] != Lexer.NUMBER) {
+				parsed.fail("Syntax error", lexer.column(operandLeft));
+				return;
+			}
+			parsed.leftSymbol = lexer.values[operandLeft];
+			parsed.leftType = TableEntry.CONSTANT;
 		} else {
-			leftEntry = getEntry((int)operandLeft.charAt(0), TableEntry.VARIABLE);
+			parsed.leftSymbol = (int)lexer.first(operandLeft);
+			parsed.leftType = TableEntry.VARIABLE;
 		}
+		parsed.operands = 1;
 
-		if (Character.isDigit(operandRight.charAt(0)) || operandRight.charAt(0) == '-') {
-			rightEntry = getEntry(Integer.parseInt(operandRight), TableEntry.CONSTANT);
+		if (Character.isDigit(lexer.first(operandRight)) || lexer.first(operandRight) == '-') {
+			if (lexer.kinds[operandRight] != Lexer.NUMBER) {
+				parsed.fail("Syntax error", lexer.column(operandRight));
+				return;
+			}
+			parsed.rightSymbol = lexer.values[operandRight];
+			parsed.rightType = TableEntry.CONSTANT;
 		} else {
-			rightEntry = getEntry((int)operandRight.charAt(0), TableEntry.VARIABLE);
+			parsed.rightSymbol = (int)lexer.first(operandRight);
+			parsed.rightType = TableEntry.VARIABLE;
 		}
+		parsed.operands = 2;
+
+		if (parsed.operator == null)
+			parsed.fail("Operator format error", lexer.column(3));
+	}
+
+	//post: returns the relational operator token is, null if it is not one
+	private static String relationalOperator(Lexer lexer, int token) {
+		for (String operator : RELATIONAL_OPERATORS) {
+			if (lexer.is(token, operator))
+				return operator;
+		}
+		return null;
+	}
+
+	//post: compiled if command added to machineCodeArr
+	private void compileIfCommand(ParsedLine line) {
+		int left = 0;
+		int right = 0;
+
+		//loads the operand entries from the symbol table, 
+		if (line.operands > 0)
+			left = getEntry(line.leftSymbol, line.leftType);
+		if (line.operands > 1)
+			right = getEntry(line.rightSymbol, line.rightType);
+		if (line.error != null)
+			return;
+		int location = line.target;
+		String operator = line.operator;
 
 		/*the relational operators are simulated using a combination of the BRANCHNEG and BRANCHZERO operations. */
 		if (operator.equals("==")) 
 		{
-			machineCodeArr[instructionCounter++] = Simpletron.LOAD*1000 + leftEntry.getLocation();
-			machineCodeArr[instructionCounter++] = Simpletron.SUBTRACT*1000 + rightEntry.getLocation();
+			emit(Simpletron.LOAD*radix + left);
+			emit(Simpletron.SUBTRACT*radix + right);
 			compileGoToCommand(location, Simpletron.BRANCHZERO);
 		} 
 		else if (operator.equals("!=")) 
 		{
-			tokens[3] = ">";
-			compileIfCommand(tokens);
-			tokens[3] = "<";
-			compileIfCommand(tokens);
+			//compiled as > followed by <
+			emit(Simpletron.LOAD*radix + right);
+			emit(Simpletron.SUBTRACT*radix + left);
+			compileGoToCommand(location, Simpletron.BRANCHNEG);
+			emit(Simpletron.LOAD*radix + left);
+			emit(Simpletron.SUBTRACT*radix + right);
+			compileGoToCommand(location, Simpletron.BRANCHNEG);
 		} 
 		else if (operator.equals(">=")) 
 		{
-			machineCodeArr[instructionCounter++] = Simpletron.LOAD*1000 + rightEntry.getLocation();
-			machineCodeArr[instructionCounter++] = Simpletron.SUBTRACT*1000 + leftEntry.getLocation();
+			emit(Simpletron.LOAD*radix + right);
+			emit(Simpletron.SUBTRACT*radix + left);
 			compileGoToCommand(location, Simpletron.BRANCHZERO);
 			compileGoToCommand(location, Simpletron.BRANCHNEG);
 		} 
 		else if (operator.equals("<=")) 
 		{
-			machineCodeArr[instructionCounter++] = Simpletron.LOAD*1000 + leftEntry.getLocation();
-			machineCodeArr[instructionCounter++] = Simpletron.SUBTRACT*1000 + rightEntry.getLocation();
+			emit(Simpletron.LOAD*radix + left);
+			emit(Simpletron.SUBTRACT*radix + right);
 			compileGoToCommand(location, Simpletron.BRANCHZERO);
 			compileGoToCommand(location, Simpletron.BRANCHNEG);
 		} 
 		else if (operator.equals(">")) 
 		{
-			machineCodeArr[instructionCounter++] = Simpletron.LOAD*1000 + rightEntry.getLocation();
-			machineCodeArr[instructionCounter++] = Simpletron.SUBTRACT*1000 + leftEntry.getLocation();
+			emit(Simpletron.LOAD*radix + right);
+			emit(Simpletron.SUBTRACT*radix + left);
 			compileGoToCommand(location, Simpletron.BRANCHNEG);
 		} 
 		else if (operator.equals("<")) 
 		{
-			machineCodeArr[instructionCounter++] = Simpletron.LOAD*1000 + leftEntry.getLocation();
-			machineCodeArr[instructionCounter++] = Simpletron.SUBTRACT*1000 + rightEntry.getLocation();
+			emit(Simpletron.LOAD*radix + left);
+			emit(Simpletron.SUBTRACT*radix + right);
 			compileGoToCommand(location, Simpletron.BRANCHNEG);
 		} 
-		else 
-		{
-			System.out.print("Operator format error on line #");
-			return false;
-		}
-
-		return true;
 	}
 
 	//pre: must be a full let statment in the format for example y = n1 + n1
-	//post: let command compiled and added to machineCodeArr
-	//      true if no errors in input
-	private boolean compileLetCommand(String statement) {
-		if (!isValidLetCommand(statement))
-			return false;
+	//post: the let command from start up to end, the statement after "let", is parsed into a tree, up to
+	//      the first token that is not valid
+	private static void parseLetCommand(Lexer lexer, CharSequence source, int start, int end, ParsedLine parsed) {
+		int assignment = findAssignment(source, start, end);
+		if (assignment < 0) {
+			parsed.fail("Syntax error: invalid let statement", lexer.columnOf(start));
+			return;
+		}
 
-		//take the substring to the right of the = operator, convert it to postfix notation, and break it up into tokens
-		String assignmentExpression = InfixToPostfixConverter.getPostfix(statement.substring(statement.indexOf("=")+1));
-		String [] expressionArr = getTokens(assignmentExpression);
-
-		Stack<TableEntry> stack = new Stack<>();
-		String string;
-		TableEntry x, y;
-
-		for (int i = 0; i < expressionArr.length; i++) {
-			string = expressionArr[i];
-			//if it is an operator
-			if (string.length() == 1 && InfixToPostfixConverter.isOperator(string.charAt(0))) {
-				//operator: take the top two items evaluate them using the operand, and push the result to the stack
-				char operator = string.charAt(0);
-
-				if (stack.empty()) {
-					x = new TableEntry(0, TableEntry.CONSTANT, dataCounter--);
-					table.put(x);
-				}
-				else 
-					x = stack.pop();
-
-				if (stack.empty()) {
-					y = new TableEntry(0, TableEntry.CONSTANT, dataCounter--);
-					table.put(y);
-				}
-				else 
-					y = stack.pop();
-
-				switch (operator) {
-					case '*': compileLetSubCommand(x, y, Simpletron.MULTIPLY); break;
-					case '/': compileLetSubCommand(x, y, Simpletron.DIVIDE); break;
-					case '+': compileLetSubCommand(x, y, Simpletron.ADD); break;
-					case '-': compileLetSubCommand(x, y, Simpletron.SUBTRACT); break;
-					case '%': compileLetSubCommand(x, y, Simpletron.REMAINDER); break;
-				}
-
-				TableEntry result = new TableEntry(0, TableEntry.CONSTANT, dataCounter--);
-				machineCodeArr[instructionCounter++] = Simpletron.STORE*1000 + result.getLocation();
-				stack.push(result); //add the result to the stack
+		lexer.expression(assignment + 1, end);
+		if (!lexer.parser.parse(parsed, lexer.columnOf(end)))
+			return;
 
-			} else {
-				//it must be a constant, or a variable
-				int symbol;
-				char type;
-				if (Character.isDigit(string.charAt(0))) {
-					symbol = Integer.parseInt(string);
-					type = TableEntry.CONSTANT;
-				} 
-				else {
-					symbol = (int)string.charAt(0);
-					type = TableEntry.VARIABLE;
-				}
-
-				TableEntry entry = getEntry(symbol, type);
-				stack.push(entry); //add the operand to the stack
+		//the variable assigned is the first character after the let that is not whitespace
+		int assignee = start;
+		while (Lexer.isWhitespace(source.charAt(assignee)))
+			assignee++;
+		parsed.symbol = (int)source.charAt(assignee);
+	}
+
+	//post: let command compiled and added to machineCodeArr. If it has an error, the operands parsed before
+	//      the error are entered in the table, and nothing is added
+	private void compileLetCommand(ParsedLine line) {
+		if (line.error != null) {
+			for (int i = 0; i < line.count; i++) {
+				if (line.kinds[i] == TableEntry.CONSTANT || line.kinds[i] == TableEntry.VARIABLE)
+					getEntry(line.symbols[i], line.kinds[i]);
+			}
+			return;
+		}
+		//the operands of a node come before it, so the nodes in order are evaluated after their operands
+		if (letLocations.length < line.count)
+			letLocations = new int[Math.max(line.count, letLocations.length * 2)];
+		int[] locations = letLocations; //where the value of each node is
+		for (int i = 0; i < line.count; i++) {
+			char kind = line.kinds[i];
+			switch (kind) {
+				case TableEntry.CONSTANT:
+				case TableEntry.VARIABLE:
+					locations[i] = getEntry(line.symbols[i], kind);
+					continue;
+				case ExpressionParser.NEGATE: //there is no negate instruction, it is 0 - x
+					compileLetSubCommand(locations[line.left[i]], getEntry(0, TableEntry.CONSTANT), Simpletron.SUBTRACT);
+					break;
+				case '*': compileLetSubCommand(locations[line.right[i]], locations[line.left[i]], Simpletron.MULTIPLY); break;
+				case '/': compileLetSubCommand(locations[line.right[i]], locations[line.left[i]], Simpletron.DIVIDE); break;
+				case '+': compileLetSubCommand(locations[line.right[i]], locations[line.left[i]], Simpletron.ADD); break;
+				case '-': compileLetSubCommand(locations[line.right[i]], locations[line.left[i]], Simpletron.SUBTRACT); break;
+				case '%': compileLetSubCommand(locations[line.right[i]], locations[line.left[i]], Simpletron.REMAINDER); break;
+				case '^': compileLetSubCommand(locations[line.right[i]], locations[line.left[i]], Simpletron.POWER); break;
 			}
+			locations[i] = (owners != null) ? patchAllocation(0) : allocateData();
+			emit(Simpletron.STORE*radix + locations[i]);
 		}
 		//add the final assignment instruction to the machineCodeArr
-		TableEntry solution = stack.pop(); //the solution is on the top of the stack
-		int variable = (int)(getTokens(statement)[0].charAt(0));
-		TableEntry assigneeVariable = getEntry(variable, TableEntry.VARIABLE);
+		int assigneeVariable = getEntry(line.symbol, TableEntry.VARIABLE);
 
-		machineCodeArr[instructionCounter++] = Simpletron.LOAD*1000 + solution.getLocation();
-		machineCodeArr[instructionCounter++] = Simpletron.STORE*1000 + assigneeVariable.getLocation();
-
-		return true;
+		emit(Simpletron.LOAD*radix + locations[line.root]);
+		emit(Simpletron.STORE*radix + assigneeVariable);
 	}
 
-	private boolean isValidLetCommand(String string) {
+	//post: returns where the = of the let statement from start up to end is, -1 if the statement is not valid
+	private static int findAssignment(CharSequence source, int start, int end) {
 		//it must contain the assignment operator
-		if (string.indexOf("=") == -1)
-			return false;
+		int assignment = start;
+		while (assignment < end && source.charAt(assignment) != '=')
+			assignment++;
+		if (assignment == end)
+			return -1;
 
 		int count = 0;
-		int i = 0;
-		for (; string.charAt(i) != '='; i++) {
-			if (string.charAt(i) != ' ')
+		for (int i = start; i < assignment; i++) {
+			if (source.charAt(i) != ' ')
 				count++;
 		}
 		//there can only be one variable to the left of the assignment operator
 		if (count != 1)
-			return false;
-		
+			return -1;
 
+		return assignment;
+	}
 
-		return true;
+	//post: instruction is added to machineCodeArr after the code so far, memoryFull is set instead if
+	//      there is no room left between the code and the data
+	private void emit(int instruction) {
+		if (instructionCounter > dataCounter) {
+			memoryFull = true;
+			return;
+		}
+		machineCodeArr[instructionCounter++] = instruction;
 	}
 
+	//post: returns the location of a new data word, taken from the top of memory down. memoryFull is
+	//      set if it would overwrite code, the location returned then is not used
+	private int allocateData() {
+		int location = nextData();
+		if (dataCounter < instructionCounter)
+			memoryFull = true;
+		else
+			dataCounter--;
+		return location;
+	}
 
-	//returns an array of strings split from whitespace in the input string
-	private String[] getTokens(String string) {
-		String [] tokens;
-		String temp = string.trim();
+	//post: returns the location the next allocateData will return, nothing is allocated
+	private int nextData() {
+		return (dataCounter < instructionCounter) ? 0 : dataCounter;
+	}
 
-		tokens = temp.split("\\s{1,}");
-		return tokens;
+	//post: when patching, returns the next data word of the line, patchFailed is set if the whole program
+	//      did not give it to the entry with the key expected. expected is 0 for the result of an operation
+	private int patchAllocation(long expected) {
+		int location = allocateData();
+		if (memoryFull || owners[location] != expected)
+			patchFailed = true;
+		return location;
 	}
 
-	//pre: entry x, and entry y are in the table, operation is valid
+	//post: the goto at address, in the statement being compiled, is resolved to target by the second pass
+	private void addFixup(int address, int target) {
+		if (fixupCount == fixupAddresses.length) {
+			fixupAddresses = Arrays.copyOf(fixupAddresses, fixupCount * 2);
+			fixupLines = Arrays.copyOf(fixupLines, fixupCount * 2);
+			fixupSources = Arrays.copyOf(fixupSources, fixupCount * 2);
+			fixupStatements = Arrays.copyOf(fixupStatements, fixupCount * 2);
+			fixupColumns = Arrays.copyOf(fixupColumns, fixupCount * 2);
+		}
+		fixupAddresses[fixupCount] = address;
+		fixupLines[fixupCount] = target;
+		fixupSources[fixupCount] = sourceLine;
+		fixupStatements[fixupCount] = lineNumber;
+		fixupColumns[fixupCount] = targetColumn;
+		fixupCount++;
+	}
+
+	//pre: x and y are the locations of operands, operation is valid
 	//post: command is compiled into the machineCodeArr
-	private void compileLetSubCommand(TableEntry x, TableEntry y, int operation) {
-		machineCodeArr[instructionCounter++] = Simpletron.LOAD*1000  + y.getLocation();
-		machineCodeArr[instructionCounter++] = operation*1000   + x.getLocation();
+	private void compileLetSubCommand(int x, int y, int operation) {
+		emit(Simpletron.LOAD*radix  + y);
+		emit(operation*radix   + x);
 	}
 
 
-	//post: file created with contents identical to the machineCodeArr
-	private void writeMachineCode() {
-		try {
-			PrintWriter writer = new PrintWriter(fileName.substring(0,fileName.length()-3) + "txt");
-			for (int i = 0; i < machineCodeArr.length; i++) {
-				writer.println(machineCodeArr[i]);
-			}
-			writer.close();
-		} catch (FileNotFoundException io) {System.out.println("failed to write file");}
+	//post: compileProgram writes the machine code as an object file (see ObjectFile) with the extension
+	//      .sml if object is true, and as a text file with the extension .txt if it is false, the default.
+	//      Programs in a format other than the standard one are always written as text
+	public void setObjectOutput(boolean object) {
+		objectOutput = object;
+	}
+
+	//post: programs of thousands of lines are parsed on the common fork-join pool if parallel is true, the
+	//      default, and a line at a time otherwise. The machine code is the same either way
+	public void setParallelParsing(boolean parallel) {
+		parallelParsing = parallel;
+	}
+
+	//post: compileProgram, compileFile, and compile look each program up in cache before compiling it,
+	//      and store the ones that compile in it. A null cache, the default, compiles every program
+	public void setCache(CompileCache cache) {
+		this.cache = cache;
+	}
 
+	//post: returns the symbol table of the last program compiled, its LINE entries give the address
+	//      each source line's code starts at
+	public SymbolTable getSymbolTable() {
+		return table;
+	}
+
+	//post: file created with contents identical to the machineCodeArr
+	private void writeMachineCode() throws IOException {
+		if (objectOutput && format.isStandard()) { //object files hold standard programs only
+			ObjectFile.write(machineCodeArr, instructionCounter, fileName.substring(0,fileName.length()-3) + "sml");
+			return;
+		}
+		PrintWriter writer = new PrintWriter(fileName.substring(0,fileName.length()-3) + "txt");
+		for (int i = 0; i < machineCodeArr.length; i++) {
+			writer.println(machineCodeArr[i]);
+		}
+		writer.close();
+		if (writer.checkError())
+			throw new IOException("failed to write file");
 	}
 
 	
@@ -1,5 +1,6 @@
 import java.awt.*;
 import javax.swing.*;
+import javax.swing.text.BadLocationException;
 import java.awt.event.*;
 import java.io.*;
 import java.util.Scanner;
@@ -12,6 +13,9 @@ public class CompilerGUI extends JFrame {
 	JTextArea textArea;
 	JScrollPane scrollPane;
 
+	IncrementalCompiler compiler = new IncrementalCompiler(); //parses only the lines edited since the last compile
+	CompileCache cache = openCache(); //programs compiled before, in this or an earlier session, null if there is none
+
 	public CompilerGUI() {
 		loadButton = new JButton("...");
 		compileButton = new JButton("Compile");
@@ -50,10 +54,16 @@ public class CompilerGUI extends JFrame {
 		runButton.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent e) {
-				compile();
-				Simpletron simpletron = new Simpletron("temp.txt");
-				simpletron.loadProgram();
-				simpletron.executeProgram();
+				CompilationResult result = compile();
+				if (!result.isSuccessful())
+					return;
+				Simpletron simpletron = new Simpletron(new StreamInput(System.in, true), new ConsoleOutput());
+				try {
+					simpletron.loadProgram(result);
+					simpletron.executeProgram();
+				} catch (SimpletronException error) {
+					//the error has been printed, the editor stays open
+				}
 			}
 		});
 
@@ -66,16 +76,50 @@ public class CompilerGUI extends JFrame {
 
 	}
 
-	public void compile() {
+	//post: the program in the editor is compiled in memory and the errors are printed, returns the result
+	public CompilationResult compile() {
+		String source = textArea.getText();
+		String key = null;
+		CompilationResult result = null;
+		if (cache != null) {
+			key = CompileCache.key(source, WordFormat.STANDARD);
+			result = cache.get(key, WordFormat.STANDARD);
+		}
+		if (result == null) {
+			result = compiler.compile(source);
+			if (cache != null) {
+				try {
+					cache.put(key, result);
+				} catch (IOException error) {} //only means compiling it again next time
+			}
+		}
+		for (Diagnostic diagnostic : result.getDiagnostics())
+			System.out.println(diagnostic);
+		System.out.println(result.isSuccessful() ? "Compilation Successful!" : "\nCompilation Failed!");
+		if (!result.isSuccessful())
+			showError(result.getDiagnostics().get(0));
+		return result;
+	}
+
+	//post: the caret is put where diagnostic is in the editor, if it is at a line
+	private void showError(Diagnostic diagnostic) {
+		int line = diagnostic.getSourceLine() - 1;
+		if (line < 0 || line >= textArea.getLineCount())
+			return;
+		try {
+			int offset = textArea.getLineStartOffset(line) + Math.max(diagnostic.getColumn() - 1, 0);
+			textArea.setCaretPosition(Math.min(offset, textArea.getLineEndOffset(line)));
+			textArea.requestFocusInWindow();
+		} catch (BadLocationException error) {}
+	}
+
+	//post: returns the cache in the .simpletron directory of the user's home, null if it can't be made
+	private static CompileCache openCache() {
 		try {
-			File file = new File("temp.smp");
-			PrintWriter writer = new PrintWriter(file);
-			writer.print(textArea.getText());
-			writer.close();
-			
-			Compiler compiler = new Compiler();
-			compiler.compileProgram("temp.smp");
-		} catch (FileNotFoundException error) {System.out.println("error");}
+			return new CompileCache(System.getProperty("user.home") + File.separator + ".simpletron" + File.separator + "cache", 16L << 20);
+		} catch (IOException error) {
+			return null;
+		}
 	}
 
 	public static void main(String [] args) {
@@ -0,0 +1,25 @@
+/**************************************************************************
+* Output of a Simpletron run from the command line. Everything is printed *
+* to System.out, and a transcript can be written to a file. Both are      *
+* buffered and written out when the program reads input, halts, or fails. *
+**************************************************************************/
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+
+public class ConsoleOutput extends BufferedOutput {
+	//post: an output to System.out that writes no transcript
+	public ConsoleOutput() {
+		super(new OutputStreamWriter(System.out), false, null, false);
+	}
+
+	public ConsoleOutput(String transcriptFileName) throws FileNotFoundException {
+		this(transcriptFileName, false);
+	}
+
+	//post: if background is true, the output is written by a thread of its own
+	public ConsoleOutput(String transcriptFileName, boolean background) throws FileNotFoundException {
+		super(new OutputStreamWriter(System.out), false,
+				new OutputStreamWriter(new FileOutputStream(transcriptFileName)), background);
+	}
+}
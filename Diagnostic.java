@@ -0,0 +1,46 @@
+/**************************************************************************
+* An error the compiler found in a Simple program. It knows the line of   *
+* the source text it is on, counted from 1, and the Simple line number    *
+* written at the start of that line, and the column of that line the     *
+* error is at, so an editor can point at it and a console can print the   *
+* message the compiler has always printed.                                *
+**************************************************************************/
+public class Diagnostic {
+	private final int sourceLine;   //line of the source text, from 1, 0 if the error is not on one line
+	private final int column;       //column of the source line, from 1, 0 if the error is not at one place
+	private final int lineNumber;   //Simple line number of the statement, -1 if it is not known
+	private final String message;
+
+	public Diagnostic(int sourceLine, int lineNumber, String message) {
+		this(sourceLine, 0, lineNumber, message);
+	}
+
+	public Diagnostic(int sourceLine, int column, int lineNumber, String message) {
+		this.sourceLine = sourceLine;
+		this.column = column;
+		this.lineNumber = lineNumber;
+		this.message = message;
+	}
+
+	public int getSourceLine() {
+		return sourceLine;
+	}
+
+	public int getColumn() {
+		return column;
+	}
+
+	public int getLineNumber() {
+		return lineNumber;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	//post: returns the message as the compiler prints it, "message on line #lineNumber"
+	@Override
+	public String toString() {
+		return (lineNumber < 0) ? message : message + " on line #" + lineNumber;
+	}
+}
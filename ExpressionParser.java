@@ -0,0 +1,168 @@
+/**************************************************************************
+* Parses the expression of a let, lexed by a Lexer, into a tree, by       *
+* precedence climbing. From the operators that bind loosest:              *
+*                                                                         *
+*   + -      left to right                                                *
+*   * / %    left to right                                                *
+*   - +      a sign in front of an operand, - negates it, + does nothing  *
+*   ^        right to left, 2^3^2 is 2^9, and -2^2 is -4                  *
+*                                                                         *
+* The tree is kept in the arrays of the ParsedLine, one node per operand  *
+* and operator. A node is added after the nodes of its operands, so the   *
+* nodes in order are the expression in postfix, and the last one is the   *
+* root. The negation of a number is folded into the number.               *
+*                                                                         *
+* An expression with an error is parsed up to the error, the nodes made   *
+* before it stay in the line. A parser belongs to one Lexer and is reused *
+* for every expression lexed by it.                                       *
+**************************************************************************/
+class ExpressionParser {
+	static final char NEGATE = '~'; //kind of a negation node, its operand is left
+
+	private static final int ADDITIVE = 1;
+	private static final int MULTIPLICATIVE = 2;
+	private static final int MAX_DEPTH = 1000; //parentheses, signs, and powers nested in each other
+
+	private final Lexer lexer;
+	private int tokens;
+	private ParsedLine line;
+	private int endColumn;       //column just past the expression, where an error at its end is
+	private int next;            //the token read next
+	private int depth;
+
+	ExpressionParser(Lexer lexer) {
+		this.lexer = lexer;
+	}
+
+	//pre:  the lexer holds the tokens of an expression that ends at column endColumn, see Lexer.expression
+	//post: line holds the tree of the expression and returns true. If it is not an expression, line fails
+	//      at the first token that is wrong and returns false
+	boolean parse(ParsedLine line, int endColumn) {
+		this.tokens = lexer.count;
+		this.line = line;
+		this.endColumn = endColumn;
+		next = 0;
+		depth = 0;
+		//every node takes at least one token, an operand or an operator
+		if (line.kinds == null || line.kinds.length < tokens) {
+			int capacity = Math.max(tokens, 1);
+			line.kinds = new char[capacity];
+			line.symbols = new int[capacity];
+			line.left = new int[capacity];
+			line.right = new int[capacity];
+		}
+		line.count = 0;
+		int root = expression(ADDITIVE);
+		if (root < 0)
+			return false;
+		if (next < tokens) {
+			line.fail("Syntax error", lexer.column(next));
+			return false;
+		}
+		line.root = root;
+		return true;
+	}
+
+	//post: returns the node of the operations from the next token on whose operators have at least
+	//      precedence, -1 if there is an error
+	private int expression(int precedence) {
+		int left = sign();
+		while (left >= 0 && next < tokens && lexer.kinds[next] == Lexer.OPERATOR) {
+			char operator = (char)lexer.values[next];
+			int rank = precedence(operator);
+			if (rank < precedence)
+				break;
+			next++;
+			int right = expression(rank + 1);
+			left = (right < 0) ? -1 : add(operator, 0, left, right);
+		}
+		return left;
+	}
+
+	//post: returns the node of an operand with a sign in front, -1 if there is an error
+	private int sign() {
+		if (next < tokens && lexer.kinds[next] == Lexer.OPERATOR && (lexer.values[next] == '-' || lexer.values[next] == '+')) {
+			boolean negate = lexer.values[next++] == '-';
+			if (!nest())
+				return -1;
+			int node = sign();
+			depth--;
+			if (node < 0 || !negate)
+				return node;
+			if (line.kinds[node] == TableEntry.CONSTANT) {
+				line.symbols[node] = -line.symbols[node];
+				return node;
+			}
+			return add(NEGATE, 0, node, -1);
+		}
+		return power();
+	}
+
+	//post: returns the node of an operand raised to a power, or of the operand if there is none, -1 if
+	//      there is an error
+	private int power() {
+		int base = primary();
+		if (base < 0 || next == tokens || lexer.kinds[next] != Lexer.OPERATOR || lexer.values[next] != '^')
+			return base;
+		next++;
+		if (!nest())
+			return -1;
+		int exponent = sign(); //takes in the powers after it, and can have a sign, 2^-1
+		depth--;
+		return (exponent < 0) ? -1 : add('^', 0, base, exponent);
+	}
+
+	//post: returns the node of an operand or of an expression in parentheses, -1 if there is an error
+	private int primary() {
+		if (next == tokens) {
+			line.fail("Syntax error", endColumn);
+			return -1;
+		}
+		int token = next++;
+		switch (lexer.kinds[token]) {
+			case Lexer.NUMBER:
+				return add(TableEntry.CONSTANT, lexer.values[token], -1, -1);
+			case Lexer.VARIABLE:
+				return add(TableEntry.VARIABLE, lexer.values[token], -1, -1);
+			case Lexer.LEFT:
+				if (!nest())
+					return -1;
+				int node = expression(ADDITIVE);
+				depth--;
+				if (node < 0)
+					return -1;
+				if (next == tokens || lexer.kinds[next] != Lexer.RIGHT) {
+					line.fail("Syntax error: missing )", (next == tokens) ? endColumn : lexer.column(next));
+					return -1;
+				}
+				next++;
+				return node;
+			default: //an operator, a ), or a number too large for an int
+				line.fail("Syntax error", lexer.column(token));
+				return -1;
+		}
+	}
+
+	//post: returns true if one more level of nesting is allowed, fails the line if it is not
+	private boolean nest() {
+		if (++depth <= MAX_DEPTH)
+			return true;
+		line.fail("Syntax error: expression nested too deeply", lexer.column(next - 1));
+		return false;
+	}
+
+	//post: returns the rank of a binary operator, an operator of a higher rank is applied first
+	private static int precedence(char operator) {
+		return (operator == '+' || operator == '-') ? ADDITIVE : MULTIPLICATIVE;
+	}
+
+	//post: a node is added after the others, returns its index
+	private int add(char kind, int symbol, int left, int right) {
+		int node = line.count++;
+		line.kinds[node] = kind;
+		line.symbols[node] = symbol;
+		line.left[node] = left;
+		line.right[node] = right;
+		return node;
+	}
+}
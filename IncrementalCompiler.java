@@ -0,0 +1,187 @@
+/**************************************************************************
+* A compiler for a program that is edited and compiled again and again,   *
+* as in CompilerGUI. It keeps every line parsed, so after an edit only    *
+* the lines that changed are parsed again, and it keeps where the code    *
+* and the data of every line are, so a changed line can often be         *
+* compiled straight into the machine code of the last compilation.       *
+*                                                                         *
+* That works when the new line has the same layout as the old one: the    *
+* same line number, as many instructions, and the same data allocated in  *
+* the same order, as when a constant, a goto target, an operator, or a    *
+* variable that is already in use changes. Nothing after the line moves   *
+* then, and the code is what a full compile gives. Any other edit links   *
+* the whole program again from its parsed lines, which skips the lexing   *
+* and the conversion to postfix that take most of a compile.              *
+*                                                                         *
+* Every result is identical to new Compiler().compile of the same source. *
+**************************************************************************/
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+public class IncrementalCompiler {
+	private Compiler compiler;
+	private WordFormat format;
+	private List<String> lines;         //the source, one entry per line
+	private List<ParsedLine> parsed;    //each line parsed
+	private BitSet changed;             //lines replaced by lines of the same count since the last compile
+	private boolean relink;             //true if the lines after an edit moved, or nothing was compiled yet
+
+	//the last compilation, and where the code and the data of each line it compiled start
+	private CompilationResult result;
+	private int[] codeStarts;
+	private int[] dataTops;
+	private int linkedLines;            //lines compiled, the ones after them are blank
+	private long[] owners;              //key of the entry each data address belongs to, null if lines can't be patched
+	private Lexer lexer = new Lexer();
+
+	private long linesParsed;
+	private long linesPatched;
+	private long links;
+
+	public IncrementalCompiler() {
+		this(WordFormat.STANDARD);
+	}
+
+	public IncrementalCompiler(WordFormat format) {
+		this.format = format;
+		compiler = new Compiler(format);
+		compiler.setParallelParsing(false);
+		lines = new ArrayList<>();
+		parsed = new ArrayList<>();
+		changed = new BitSet();
+		relink = true;
+	}
+
+	//post: returns source compiled. Only the lines that differ from the last source are parsed again, the
+	//      first and last lines that are the same are kept
+	public CompilationResult compile(CharSequence source) {
+		List<String> newLines = Compiler.lines(source);
+		int common = Math.min(lines.size(), newLines.size());
+		int prefix = 0;
+		while (prefix < common && lines.get(prefix).equals(newLines.get(prefix)))
+			prefix++;
+		int suffix = 0;
+		while (suffix < common - prefix
+				&& lines.get(lines.size() - 1 - suffix).equals(newLines.get(newLines.size() - 1 - suffix)))
+			suffix++;
+		replaceLines(prefix, lines.size() - prefix - suffix, newLines.subList(prefix, newLines.size() - suffix));
+		return compile();
+	}
+
+	//pre:  0 <= first <= first + count <= getLineCount()
+	//post: the count lines from first are replaced by replacement, which is parsed. Nothing is compiled
+	//      until compile is called
+	public void replaceLines(int first, int count, List<String> replacement) {
+		if (replacement.size() == count) {
+			for (int i = 0; i < count; i++) {
+				String line = replacement.get(i);
+				if (!line.equals(lines.get(first + i))) {
+					lines.set(first + i, line);
+					parsed.set(first + i, parse(line));
+					changed.set(first + i);
+				}
+			}
+			return;
+		}
+		List<ParsedLine> replacementParsed = new ArrayList<>(replacement.size());
+		for (String line : replacement)
+			replacementParsed.add(parse(line));
+		lines.subList(first, first + count).clear();
+		lines.addAll(first, replacement);
+		parsed.subList(first, first + count).clear();
+		parsed.addAll(first, replacementParsed);
+		relink = true;
+	}
+
+	//post: line index is text, see replaceLines
+	public void setLine(int index, String text) {
+		replaceLines(index, 1, Collections.singletonList(text));
+	}
+
+	public int getLineCount() {
+		return lines.size();
+	}
+
+	public String getLine(int index) {
+		return lines.get(index);
+	}
+
+	//post: returns the lines as they are now compiled, each changed line is patched into the last result
+	//      if it can be and the program is linked again if not
+	public CompilationResult compile() {
+		if (!relink && owners != null) {
+			if (changed.isEmpty())
+				return result;
+			int[] code = result.getCode(); //copies, the last result does not change
+			SymbolTable table = result.getSymbolTable();
+			boolean patched = true;
+			int count = 0;
+			for (int i = changed.nextSetBit(0); i >= 0 && patched; i = changed.nextSetBit(i + 1), count++) {
+				patched = i < linkedLines && compiler.patchLine(parsed.get(i), code, table, owners,
+						codeStarts[i], codeStarts[i + 1], dataTops[i], dataTops[i + 1]);
+			}
+			if (patched) {
+				result = new CompilationResult(code, result.getCodeLength(), format, table,
+						new ArrayList<Diagnostic>());
+				linesPatched += count;
+				changed.clear();
+				return result;
+			}
+		}
+		return link();
+	}
+
+	//post: every line is compiled from its parsed form
+	private CompilationResult link() {
+		linkedLines = lines.size();
+		while (linkedLines > 0 && isBlank(lines.get(linkedLines - 1)))
+			linkedLines--;
+		codeStarts = new int[linkedLines + 1];
+		dataTops = new int[linkedLines + 1];
+		result = compiler.link(parsed.subList(0, linkedLines), codeStarts, dataTops);
+		links++;
+		relink = false;
+		changed.clear();
+
+		owners = null;
+		if (result.isSuccessful() && compiler.isPatchable()) {
+			owners = new long[format.getMemorySize()];
+			for (TableEntry entry : result.getSymbolTable().entries()) {
+				if (entry.getType() != TableEntry.LINE)
+					owners[entry.getLocation()] = SymbolTable.key(entry.getSymbol(), entry.getType());
+			}
+		}
+		return result;
+	}
+
+	private ParsedLine parse(String line) {
+		linesParsed++;
+		return Compiler.parseLine(lexer, line, 0, line.length());
+	}
+
+	//post: returns true if line is nothing but whitespace, a compiler ignores such lines at the end
+	private static boolean isBlank(String line) {
+		for (int i = 0; i < line.length(); i++) {
+			if (!Character.isWhitespace(line.charAt(i)))
+				return false;
+		}
+		return true;
+	}
+
+	//post: returns the number of lines parsed so far
+	public long getLinesParsed() {
+		return linesParsed;
+	}
+
+	//post: returns the number of lines compiled into an earlier result in place
+	public long getLinesPatched() {
+		return linesPatched;
+	}
+
+	//post: returns the number of times every line was compiled
+	public long getLinks() {
+		return links;
+	}
+}
@@ -0,0 +1,180 @@
+/**************************************************************************
+* Splits a line of a Simple program into tokens, reading the characters   *
+* straight from the source, a String, a CharBuffer, or a file mapped into *
+* memory, without copying the line out of it. A token is a kind, where it *
+* starts and ends in the source, and an int value, kept in arrays that    *
+* are reused from line to line, so once they are big enough lexing a     *
+* line allocates nothing.                                                 *
+*                                                                         *
+* A statement is lexed into words as the compiler has always split it:    *
+* the characters up to and including the space are trimmed from its ends, *
+* as String.trim trims them, and the rest is split where there are        *
+* separators, the characters \s matches in a regular expression. The      *
+* expression of a let is lexed a character at a time: the characters     *
+* String.trim trims are skipped, a run of digits is a number, and every   *
+* other character that is not an operator or a parenthesis is a variable *
+* of its own.                                                             *
+*                                                                         *
+* A Lexer is used by one thread at a time.                                *
+**************************************************************************/
+import java.util.Arrays;
+
+class Lexer {
+	//kinds of token
+	static final int WORD      = 0; //a word of a statement that is not a number
+	static final int NUMBER    = 1; //a word Integer.parseInt accepts, or a run of digits in an expression
+	static final int TOO_LARGE = 2; //a run of digits in an expression that does not fit an int
+	static final int VARIABLE  = 3; //a character of an expression, value is the character
+	static final int OPERATOR  = 4; //+ - * / % ^ in an expression, value is the character
+	static final int LEFT      = 5; //( in an expression
+	static final int RIGHT     = 6; //) in an expression
+
+	private static final int INITIAL_TOKENS = 32;
+
+	private CharSequence source;
+	private int lineStart;  //where the line lexed last starts in source, its columns count from there
+
+	int count;              //tokens in the buffer
+	int[] kinds = new int[INITIAL_TOKENS];
+	int[] starts = new int[INITIAL_TOKENS];
+	int[] ends = new int[INITIAL_TOKENS]; //just past the last character of each token
+	int[] values = new int[INITIAL_TOKENS];
+	final ExpressionParser parser = new ExpressionParser(this); //parses the expressions lexed into the buffer
+
+	//post: the buffer holds the words of source from start up to end, which is on the line starting at
+	//      lineStart. Returns the number of words
+	int words(CharSequence source, int lineStart, int start, int end) {
+		this.source = source;
+		this.lineStart = lineStart;
+		count = 0;
+		while (start < end && isWhitespace(source.charAt(start)))
+			start++;
+		while (end > start && isWhitespace(source.charAt(end - 1)))
+			end--;
+		int i = start;
+		while (i < end) {
+			int wordStart = i;
+			while (i < end && !isSeparator(source.charAt(i)))
+				i++;
+			int token = add(WORD, wordStart, i);
+			if (parseInt(wordStart, i))
+				kinds[token] = NUMBER;
+			while (i < end && isSeparator(source.charAt(i)))
+				i++;
+		}
+		return count;
+	}
+
+	//post: the buffer holds the tokens of the expression in source from start up to end, on the line
+	//      lexed last by words. Returns the number of tokens
+	int expression(int start, int end) {
+		count = 0;
+		int i = start;
+		while (i < end) {
+			char c = source.charAt(i);
+			if (isWhitespace(c)) {
+				i++;
+			} else if (Character.isDigit(c)) {
+				int numberStart = i;
+				long value = 0;
+				for (; i < end && Character.isDigit(source.charAt(i)); i++) {
+					if (value <= Integer.MAX_VALUE)
+						value = value * 10 + Character.digit(source.charAt(i), 10);
+				}
+				int token = add(value <= Integer.MAX_VALUE ? NUMBER : TOO_LARGE, numberStart, i);
+				values[token] = (int)value;
+			} else {
+				int kind = (c == '(') ? LEFT : (c == ')') ? RIGHT : isOperator(c) ? OPERATOR : VARIABLE;
+				int token = add(kind, i, i + 1); //not values[add(...)], add can replace the array
+				values[token] = c;
+				i++;
+			}
+		}
+		return count;
+	}
+
+	//post: returns true if token is the characters of text
+	boolean is(int token, String text) {
+		int length = ends[token] - starts[token];
+		if (length != text.length())
+			return false;
+		for (int i = 0; i < length; i++) {
+			if (source.charAt(starts[token] + i) != text.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	//post: returns the first character of token
+	char first(int token) {
+		return source.charAt(starts[token]);
+	}
+
+	int length(int token) {
+		return ends[token] - starts[token];
+	}
+
+	//post: returns the column token starts at, from 1
+	int column(int token) {
+		return starts[token] - lineStart + 1;
+	}
+
+	//post: returns the column of the character at index in the source, from 1
+	int columnOf(int index) {
+		return index - lineStart + 1;
+	}
+
+	//post: returns true if String.trim trims c
+	static boolean isWhitespace(char c) {
+		return c <= ' ';
+	}
+
+	//post: returns true if c separates words, as \s does
+	static boolean isSeparator(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	static boolean isOperator(char c) {
+		return c == '+' || c == '-' || c == '*' || c == '/' || c == '%' || c == '^';
+	}
+
+	//post: a token of kind from start up to end is added, returns its index
+	private int add(int kind, int start, int end) {
+		if (count == kinds.length) {
+			kinds = Arrays.copyOf(kinds, count * 2);
+			starts = Arrays.copyOf(starts, count * 2);
+			ends = Arrays.copyOf(ends, count * 2);
+			values = Arrays.copyOf(values, count * 2);
+		}
+		kinds[count] = kind;
+		starts[count] = start;
+		ends[count] = end;
+		return count++;
+	}
+
+	//post: returns true if the characters from start up to end are an int as Integer.parseInt reads them,
+	//      the int is then the value of the last token
+	private boolean parseInt(int start, int end) {
+		int i = start;
+		char sign = source.charAt(i);
+		if (sign == '-' || sign == '+')
+			i++;
+		if (i == end)
+			return false;
+		long value = 0;
+		for (; i < end; i++) {
+			int digit = Character.digit(source.charAt(i), 10);
+			if (digit < 0)
+				return false;
+			value = value * 10 + digit;
+			if (value > (long)Integer.MAX_VALUE + 1)
+				return false;
+		}
+		if (sign == '-')
+			value = -value;
+		if (value > Integer.MAX_VALUE)
+			return false;
+		values[count - 1] = (int)value;
+		return true;
+	}
+}
@@ -0,0 +1,135 @@
+/**************************************************************************
+* Binary object format for machine level programs, the compact form of    *
+* the one word per line text files. All values are big endian.            *
+*                                                                         *
+*   header   magic "SMLO", u16 version, u16 memory size, u16 code length, *
+*            u16 data entry count, 4 reserved bytes                       *
+*   code     the words from address 0 up to the code length, one int each *
+*   data     the nonzero words after the code, u16 address and int value  *
+*   checksum CRC32 of everything before it                                *
+*                                                                         *
+* Words that are in neither segment are 0. A file is read by mapping it   *
+* into memory, and is recognized by its magic, so programs in the text    *
+* format can be loaded from the same places.                              *
+**************************************************************************/
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+public class ObjectFile {
+	public static final int MAGIC   = 0x534D4C4F; //"SMLO"
+	public static final int VERSION = 1;
+
+	private static final int HEADER_SIZE     = 16;
+	private static final int DATA_ENTRY_SIZE = 6;
+	private static final int CHECKSUM_SIZE   = 4;
+
+	//post: returns the image encoded in the object format. The code segment ends at the first 0 word
+	public static ByteBuffer encode(int[] image) {
+		int codeLength = 0;
+		while (codeLength < image.length && image[codeLength] != 0)
+			codeLength++;
+		return encode(image, codeLength);
+	}
+
+	//pre:  image holds at most MEMORY_SIZE words, 0 <= codeLength <= image.length
+	//post: returns the image encoded in the object format, with the words before codeLength as the
+	//      code segment. The buffer is ready to be written
+	public static ByteBuffer encode(int[] image, int codeLength) {
+		if (image.length > Simpletron.MEMORY_SIZE)
+			throw new IllegalArgumentException("object files hold standard programs only");
+		int dataCount = 0;
+		for (int i = codeLength; i < image.length; i++) {
+			if (image[i] != 0)
+				dataCount++;
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + codeLength * 4
+				+ dataCount * DATA_ENTRY_SIZE + CHECKSUM_SIZE);
+		buffer.putInt(MAGIC);
+		buffer.putShort((short)VERSION);
+		buffer.putShort((short)Simpletron.MEMORY_SIZE);
+		buffer.putShort((short)codeLength);
+		buffer.putShort((short)dataCount);
+		buffer.putInt(0);
+		for (int i = 0; i < codeLength; i++)
+			buffer.putInt(image[i]);
+		for (int i = codeLength; i < image.length; i++) {
+			if (image[i] != 0) {
+				buffer.putShort((short)i);
+				buffer.putInt(image[i]);
+			}
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(buffer.array(), 0, buffer.position());
+		buffer.putInt((int)crc.getValue());
+		buffer.flip();
+		return buffer;
+	}
+
+	//post: the image is written to fileName in the object format
+	public static void write(int[] image, int codeLength, String fileName) throws IOException {
+		ByteBuffer buffer = encode(image, codeLength);
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+		}
+	}
+
+	//post: returns the words of the program in fileName, null if the file is not in the object format.
+	//      Throws IOException if it can't be read or is damaged
+	public static int[] read(String fileName) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < 4)
+				return null;
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			if (buffer.getInt(0) != MAGIC)
+				return null;
+			return decode(buffer);
+		}
+	}
+
+	//pre:  buffer starts with MAGIC
+	//post: returns the words of the program in buffer, throws IOException if it is damaged
+	public static int[] decode(ByteBuffer buffer) throws IOException {
+		if (buffer.limit() < HEADER_SIZE + CHECKSUM_SIZE)
+			throw new IOException("object file is truncated");
+		int version    = buffer.getShort(4) & 0xffff;
+		int memorySize = buffer.getShort(6) & 0xffff;
+		int codeLength = buffer.getShort(8) & 0xffff;
+		int dataCount  = buffer.getShort(10) & 0xffff;
+		if (version != VERSION)
+			throw new IOException("unsupported object file version " + version);
+		if (memorySize != Simpletron.MEMORY_SIZE || codeLength > memorySize)
+			throw new IOException("object file does not fit the Simpletron's memory");
+		int end = HEADER_SIZE + codeLength * 4 + dataCount * DATA_ENTRY_SIZE;
+		if (buffer.limit() != end + CHECKSUM_SIZE)
+			throw new IOException("object file has the wrong length");
+
+		CRC32 crc = new CRC32();
+		ByteBuffer covered = buffer.duplicate();
+		covered.position(0).limit(end);
+		crc.update(covered);
+		if ((int)crc.getValue() != buffer.getInt(end))
+			throw new IOException("object file checksum does not match");
+
+		int[] image = new int[memorySize];
+		int position = HEADER_SIZE;
+		for (int i = 0; i < codeLength; i++, position += 4)
+			image[i] = buffer.getInt(position);
+		for (int i = 0; i < dataCount; i++, position += DATA_ENTRY_SIZE) {
+			int address = buffer.getShort(position) & 0xffff;
+			if (address >= memorySize)
+				throw new IOException("object file data address out of range");
+			image[address] = buffer.getInt(position + 2);
+		}
+		return image;
+	}
+}
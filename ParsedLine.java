@@ -0,0 +1,72 @@
+/**************************************************************************
+* One line of a Simple program lexed and parsed, but not yet compiled: it *
+* holds what the line says and no addresses. Compiler.parseLine makes it  *
+* without touching the compiler, so the lines of a program can be parsed  *
+* on many threads, and the compiler then emits them in order.             *
+*                                                                         *
+* A line with an error still holds what came before the error, because    *
+* the compiler has always entered the operands it read into the symbol    *
+* table before it found out the statement was wrong.                      *
+*                                                                         *
+* A compiler that compiles each line as soon as it is parsed parses every *
+* line into the same ParsedLine, see clear.                               *
+**************************************************************************/
+class ParsedLine {
+	enum Command {NONE, REMARK, INPUT, PRINT, LET, GOTO, IF, END}
+
+	int lineNumber = -1;       //Simple line number, -1 if there is none
+	boolean hasLine;           //true if the line number goes in the symbol table
+	Command command = Command.NONE;
+	String error;              //the first error in the line, null if there is none
+	int errorColumn;           //column of the source line the error is at, from 1
+
+	int symbol;                //variable of input and print, the variable assigned by let
+	int target;                //line number goto and if jump to
+	int targetColumn;          //column of the source line the target is at, from 1
+
+	//let: the expression as a tree, see ExpressionParser. A node's kind is TableEntry.CONSTANT or
+	//TableEntry.VARIABLE, with the value in symbols, or the operator, with its operands in left and right.
+	//The arrays can be longer than count
+	int[] symbols;
+	char[] kinds;
+	int[] left;
+	int[] right;
+	int count;                 //nodes made before an error, all of them if there is none
+	int root;                  //node of the whole expression
+
+	//if: the two operands, the relational operator, and how many operands were read before an error
+	int leftSymbol;
+	char leftType;
+	int rightSymbol;
+	char rightType;
+	String operator;
+	int operands;
+
+	//post: the first error found in the line is message, at column
+	void fail(String message, int column) {
+		if (error == null) {
+			error = message;
+			errorColumn = column;
+		}
+	}
+
+	//post: the line is as a new ParsedLine is, but keeps its arrays
+	void clear() {
+		lineNumber = -1;
+		hasLine = false;
+		command = Command.NONE;
+		error = null;
+		errorColumn = 0;
+		symbol = 0;
+		target = 0;
+		targetColumn = 0;
+		count = 0;
+		root = 0;
+		leftSymbol = 0;
+		leftType = 0;
+		rightSymbol = 0;
+		rightType = 0;
+		operator = null;
+		operands = 0;
+	}
+}
@@ -0,0 +1,253 @@
+/**************************************************************************
+* This class counts what a Simpletron executes: how often each address    *
+* runs, how often each operation code runs, and how often each BRANCHNEG  *
+* and BRANCHZERO is taken. A Simpletron only profiles when it is given a  *
+* Profiler, and then runs a loop of its own, so the other loops carry no  *
+* profiling code at all.                                                  *
+*                                                                         *
+* Given the SymbolTable of the compiler that produced the program, the    *
+* counts are also added up per line of the Simple source. Results can be  *
+* written as a text report and in the collapsed stack format read by      *
+* flame graph tools.                                                      *
+*                                                                         *
+* usage: java Profiler program.smp [input...]                             *
+* compiles the program in memory and runs it, prints the report, and      *
+* writes the collapsed stacks to program.collapsed                        *
+**************************************************************************/
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class Profiler {
+	private static final int OPERATION_CODES = 100;
+
+	private int memorySize;
+	private long[] addressCounts;    //times the word at each address was executed
+	private long[] opcodeCounts;     //times each operation code was executed
+	private long[] takenCounts;      //times the conditional branch at each address was taken
+	private long[] notTakenCounts;
+	private int[] addressOpcodes;    //operation code last executed at each address
+	private long total;
+	private int[] lines;            //source line of each address, -1 if it has none
+
+	public Profiler() {
+		this(Simpletron.MEMORY_SIZE);
+	}
+
+	public Profiler(int memorySize) {
+		this.memorySize = memorySize;
+		addressCounts  = new long[memorySize];
+		opcodeCounts   = new long[OPERATION_CODES];
+		takenCounts    = new long[memorySize];
+		notTakenCounts = new long[memorySize];
+		addressOpcodes = new int[memorySize];
+		lines = new int[memorySize];
+		Arrays.fill(lines, -1);
+	}
+
+	//pre:  0 <= address < memory size
+	//post: the word at address, with operation code operationCode, is counted as executed once. taken
+	//      is whether a BRANCHNEG or BRANCHZERO branches
+	void record(int address, int operationCode, boolean taken) {
+		total++;
+		addressCounts[address]++;
+		addressOpcodes[address] = operationCode;
+		if (operationCode >= 0 && operationCode < OPERATION_CODES)
+			opcodeCounts[operationCode]++;
+		if (operationCode == Simpletron.BRANCHNEG || operationCode == Simpletron.BRANCHZERO) {
+			if (taken)
+				takenCounts[address]++;
+			else
+				notTakenCounts[address]++;
+		}
+	}
+
+	//post: every address is mapped to the source line whose code it is in, using the LINE entries of table.
+	//      A line's code runs from its location up to the location of the next line with code
+	public void mapLines(SymbolTable table) {
+		List<TableEntry> entries = new ArrayList<>();
+		for (TableEntry entry : table.entries()) {
+			if (entry.getType() == TableEntry.LINE)
+				entries.add(entry);
+		}
+		//lines without code share a location with the line after them, which is sorted last and wins
+		Collections.sort(entries, (a, b) -> a.getLocation() != b.getLocation()
+				? Integer.compare(a.getLocation(), b.getLocation()) : Integer.compare(a.getSymbol(), b.getSymbol()));
+
+		Arrays.fill(lines, -1);
+		for (int i = 0; i < entries.size(); i++) {
+			int start = entries.get(i).getLocation();
+			int end = (i + 1 < entries.size()) ? entries.get(i + 1).getLocation() : memorySize;
+			for (int address = start; address < end && address < memorySize; address++)
+				lines[address] = entries.get(i).getSymbol();
+		}
+	}
+
+	public int getMemorySize() {
+		return memorySize;
+	}
+
+	public long getTotal() {
+		return total;
+	}
+
+	public long getAddressCount(int address) {
+		return addressCounts[address];
+	}
+
+	public long getOpcodeCount(int operationCode) {
+		return opcodeCounts[operationCode];
+	}
+
+	public long getTakenCount(int address) {
+		return takenCounts[address];
+	}
+
+	public long getNotTakenCount(int address) {
+		return notTakenCounts[address];
+	}
+
+	//post: returns the source line of address, -1 if it has none or mapLines was not called
+	public int getLine(int address) {
+		return lines[address];
+	}
+
+	//post: every count is 0, the line map is kept
+	public void reset() {
+		Arrays.fill(addressCounts, 0);
+		Arrays.fill(opcodeCounts, 0);
+		Arrays.fill(takenCounts, 0);
+		Arrays.fill(notTakenCounts, 0);
+		total = 0;
+	}
+
+	//post: writes the counts per source line, per address, and per operation code, busiest first
+	public void writeReport(PrintWriter writer) {
+		writer.printf("%d instructions executed%n", total);
+
+		List<long[]> lineTotals = new ArrayList<>(); //{line, count}
+		for (int address = 0; address < memorySize; address++) {
+			if (addressCounts[address] == 0 || lines[address] < 0)
+				continue;
+			long[] last = lineTotals.isEmpty() ? null : lineTotals.get(lineTotals.size() - 1);
+			if (last != null && last[0] == lines[address])
+				last[1] += addressCounts[address];
+			else
+				lineTotals.add(new long[] {lines[address], addressCounts[address]});
+		}
+		if (!lineTotals.isEmpty()) {
+			Collections.sort(lineTotals, (a, b) -> Long.compare(b[1], a[1]));
+			writer.printf("%nby source line%n");
+			writer.printf("%8s %14s %7s%n", "line", "count", "%");
+			for (long[] line : lineTotals)
+				writer.printf("%8d %14d %7.2f%n", line[0], line[1], percent(line[1]));
+		}
+
+		List<Integer> addresses = new ArrayList<>();
+		for (int address = 0; address < memorySize; address++) {
+			if (addressCounts[address] > 0)
+				addresses.add(address);
+		}
+		Collections.sort(addresses, (a, b) -> Long.compare(addressCounts[b], addressCounts[a]));
+		writer.printf("%nby address%n");
+		writer.printf("%8s %8s %-10s %14s %7s %12s %12s%n", "address", "line", "operation", "count", "%", "taken", "not taken");
+		for (int address : addresses) {
+			writer.printf("%8d %8s %-10s %14d %7.2f", address, lines[address] < 0 ? "" : String.valueOf(lines[address]),
+					operationName(addressOpcodes[address]), addressCounts[address], percent(addressCounts[address]));
+			if (takenCounts[address] + notTakenCounts[address] > 0)
+				writer.printf(" %12d %12d", takenCounts[address], notTakenCounts[address]);
+			writer.println();
+		}
+
+		writer.printf("%nby operation code%n");
+		writer.printf("%-10s %14s %7s%n", "operation", "count", "%");
+		for (int code = 0; code < OPERATION_CODES; code++) {
+			if (opcodeCounts[code] > 0)
+				writer.printf("%-10s %14d %7.2f%n", operationName(code), opcodeCounts[code], percent(opcodeCounts[code]));
+		}
+		writer.flush();
+	}
+
+	//post: writes one line "program;line L;address A OPERATION count" per executed address, the
+	//      collapsed stack format of flame graph tools. The line frame is left out for unmapped addresses
+	public void writeCollapsed(PrintWriter writer, String programName) {
+		for (int address = 0; address < memorySize; address++) {
+			if (addressCounts[address] == 0)
+				continue;
+			writer.print(programName);
+			if (lines[address] >= 0)
+				writer.print(";line " + lines[address]);
+			writer.println(";" + address + " " + operationName(addressOpcodes[address]) + " " + addressCounts[address]);
+		}
+		writer.flush();
+	}
+
+	private double percent(long count) {
+		return total == 0 ? 0 : 100.0 * count / total;
+	}
+
+	//post: returns the name of an operation code, the code itself if it is not valid
+	public static String operationName(int code) {
+		switch (code) {
+			case Simpletron.READ:       return "READ";
+			case Simpletron.WRITE:      return "WRITE";
+			case Simpletron.NEWLINE:    return "NEWLINE";
+			case Simpletron.LOAD:       return "LOAD";
+			case Simpletron.STORE:      return "STORE";
+			case Simpletron.ADD:        return "ADD";
+			case Simpletron.SUBTRACT:   return "SUBTRACT";
+			case Simpletron.DIVIDE:     return "DIVIDE";
+			case Simpletron.MULTIPLY:   return "MULTIPLY";
+			case Simpletron.REMAINDER:  return "REMAINDER";
+			case Simpletron.POWER:      return "POWER";
+			case Simpletron.BRANCH:     return "BRANCH";
+			case Simpletron.BRANCHNEG:  return "BRANCHNEG";
+			case Simpletron.BRANCHZERO: return "BRANCHZERO";
+			case Simpletron.HALT:       return "HALT";
+			default:                    return String.valueOf(code);
+		}
+	}
+
+	public static void main(String [] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("usage: java Profiler program.smp [input...]");
+			return;
+		}
+		String base = args[0].substring(0, args[0].length() - 3);
+		CompilationResult result;
+		try (Reader reader = new FileReader(args[0])) {
+			result = new Compiler().compile(reader);
+		}
+		for (Diagnostic diagnostic : result.getDiagnostics())
+			System.out.println(diagnostic);
+		if (!result.isSuccessful())
+			return;
+
+		int[] values = new int[args.length - 1];
+		for (int i = 1; i < args.length; i++)
+			values[i - 1] = Integer.parseInt(args[i]);
+		StringOutput output = new StringOutput();
+		Simpletron simpletron = new Simpletron(new ArrayInput(values), output);
+		simpletron.loadProgram(result);
+		Profiler profiler = new Profiler();
+		profiler.mapLines(result.getSymbolTable());
+		simpletron.setProfiler(profiler);
+		try {
+			simpletron.executeProgram();
+		} catch (SimpletronException e) {
+			//the failure is in the transcript, and the profile up to it is still worth reading
+		}
+		System.out.print(output.getTranscript());
+		System.out.println();
+		profiler.writeReport(new PrintWriter(System.out));
+		try (PrintWriter writer = new PrintWriter(base + "collapsed")) {
+			profiler.writeCollapsed(writer, new File(args[0]).getName());
+		}
+	}
+}
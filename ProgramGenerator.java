@@ -0,0 +1,188 @@
+/**************************************************************************
+* This class writes valid Simple programs of any size for benchmarks and  *
+* tests. The same seed always gives the same program. Every program       *
+* compiles, halts, and never overflows a word or divides by zero:         *
+*                                                                         *
+*   variables a to h hold values below 97, every let ends with % 97       *
+*   i and j are loop counters, only changed by the loops that own them    *
+*   every goto is a forward skip inside a block, or the back edge of a    *
+*   loop that runs a fixed number of times                                *
+*                                                                         *
+* The mix decides which statements are common. Each let uses about ten    *
+* words of memory, so programs of more than about 60 statements need a    *
+* wide format, see WordFormat.wide.                                       *
+*                                                                         *
+* usage: java ProgramGenerator statements LET_HEAVY|BRANCH_HEAVY|IO_HEAVY *
+*        [seed]                                                           *
+* prints the program                                                      *
+**************************************************************************/
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class ProgramGenerator {
+	public enum Mix {
+		LET_HEAVY,    //mostly arithmetic
+		BRANCH_HEAVY, //mostly ifs and loops, the most instructions run per statement
+		IO_HEAVY      //mostly input and print
+	}
+
+	private static final String VARIABLES = "abcdefgh";
+	private static final String COUNTERS  = "ij";    //one per level of loop nesting
+	private static final int BOUND = 97;             //every variable is kept below it
+
+	private Random random;
+	private Mix mix;
+	private List<String> statements; //without line numbers, statement n is on line (n + 1) * 10
+	private int depth;               //loops open around the statement being generated
+
+	public ProgramGenerator(long seed) {
+		random = new Random(seed);
+	}
+
+	//post: returns a program of about count statements, one per line with line numbers 10, 20, ...
+	public String generate(int count, Mix mix) {
+		this.mix = mix;
+		statements = new ArrayList<>();
+		depth = 0;
+		for (int i = 0; i < VARIABLES.length(); i++)
+			add("let " + VARIABLES.charAt(i) + " = " + (i + 1));
+		while (statements.size() < count - 2)
+			block(count - 2);
+		add("print a");
+		add("end");
+
+		StringBuilder program = new StringBuilder();
+		for (int i = 0; i < statements.size(); i++)
+			program.append(lineNumber(i)).append(' ').append(statements.get(i)).append('\n');
+		return program.toString();
+	}
+
+	//post: the program is written to fileName
+	public void write(String fileName, int count, Mix mix) throws FileNotFoundException {
+		try (PrintWriter writer = new PrintWriter(fileName)) {
+			writer.print(generate(count, mix));
+		}
+	}
+
+	//post: returns an infix expression of operands numbers and variables joined by + - * / %, with
+	//      parentheses. Without variables it is all numbers, and can be evaluated by PostfixEvaluator
+	public String expression(int operands, boolean variables) {
+		StringBuilder expression = new StringBuilder();
+		int open = 0;
+		char operator = ' ';
+		for (int i = 0; i < operands; i++) {
+			if (i > 0) {
+				operator = "+-*/%".charAt(random.nextInt(5));
+				expression.append(' ').append(operator).append(' ');
+			}
+			//a group could come to 0, so a divisor is always a single number
+			boolean divisor = operator == '/' || operator == '%';
+			if (!divisor && i < operands - 1 && random.nextInt(4) == 0) {
+				expression.append('(');
+				open++;
+			}
+			if (variables && !divisor && random.nextBoolean())
+				expression.append(VARIABLES.charAt(random.nextInt(VARIABLES.length())));
+			else
+				expression.append(1 + random.nextInt(99)); //never 0, so nothing divides by zero
+			if (open > 0 && random.nextInt(3) == 0) {
+				expression.append(')');
+				open--;
+			}
+		}
+		for (; open > 0; open--)
+			expression.append(')');
+		return expression.toString();
+	}
+
+	private static int lineNumber(int statement) {
+		return (statement + 1) * 10;
+	}
+
+	private int add(String statement) {
+		statements.add(statement);
+		return statements.size() - 1;
+	}
+
+	//post: one block of statements is added, limit is the size the program should not grow much past
+	private void block(int limit) {
+		int roll = random.nextInt(100);
+		int lets, skips, loops; //percentages, the rest is input and print
+		switch (mix) {
+			case LET_HEAVY:    lets = 70; skips = 15; loops = 10; break;
+			case BRANCH_HEAVY: lets = 30; skips = 40; loops = 30; break;
+			default:           lets = 20; skips = 5;  loops = 10; break;
+		}
+		if (roll < lets)
+			add(let());
+		else if (roll < lets + skips)
+			skip();
+		else if (roll < lets + skips + loops && depth < COUNTERS.length() && statements.size() + 4 < limit)
+			loop(limit);
+		else if (random.nextInt(mix == Mix.IO_HEAVY ? 2 : 4) == 0)
+			add("input " + variable());
+		else
+			add("print " + variable());
+	}
+
+	//post: returns a let that keeps its variable below BOUND, there is at most one * so nothing overflows
+	private String let() {
+		String first = operand();
+		String second = operand();
+		switch (random.nextInt(4)) {
+			case 0:  return "let " + variable() + " = (" + first + " + " + second + ") % " + BOUND;
+			case 1:  return "let " + variable() + " = (" + first + " - " + second + " + " + operand() + ") % " + BOUND;
+			case 2:  return "let " + variable() + " = (" + first + " * " + second + " + " + operand() + ") % " + BOUND;
+			default: return "let " + variable() + " = (" + first + " / " + (1 + random.nextInt(9)) + " + " + second + ") % " + BOUND;
+		}
+	}
+
+	//post: returns a variable or a constant. The constant is never 0, compilers that kept their temporaries
+	//      under the symbol table entry of constant 0 compiled a 0 wrongly, and a seed gives the programs it always has
+	private String operand() {
+		return random.nextInt(3) == 0 ? String.valueOf(1 + random.nextInt(9)) : String.valueOf(variable());
+	}
+
+	private char variable() {
+		return VARIABLES.charAt(random.nextInt(VARIABLES.length()));
+	}
+
+	//post: adds an if that skips the next few statements, they end at a rem the if jumps to
+	private void skip() {
+		String[] operators = {"==", "!=", "<", "<=", ">", ">="};
+		int condition = add(null);
+		int body = 1 + random.nextInt(3);
+		for (int i = 0; i < body; i++)
+			add(let());
+		int target = add("rem skipped to");
+		statements.set(condition, "if " + variable() + " " + operators[random.nextInt(operators.length)] + " "
+				+ operand() + " goto " + lineNumber(target));
+	}
+
+	//post: adds a loop that runs its body a fixed number of times, the body can hold other blocks
+	private void loop(int limit) {
+		char counter = COUNTERS.charAt(depth);
+		int times = 5 + random.nextInt(16);
+		add("let " + counter + " = 1"); //not 0, see operand
+		int start = add("rem loop");
+		depth++;
+		int body = 2 + random.nextInt(5);
+		for (int i = 0; i < body && statements.size() + 2 < limit; i++)
+			block(limit);
+		depth--;
+		add("let " + counter + " = " + counter + " + 1");
+		add("if " + counter + " < " + times + " goto " + lineNumber(start));
+	}
+
+	public static void main(String [] args) {
+		if (args.length < 2) {
+			System.out.println("usage: java ProgramGenerator statements LET_HEAVY|BRANCH_HEAVY|IO_HEAVY [seed]");
+			return;
+		}
+		long seed = (args.length > 2) ? Long.parseLong(args[2]) : 1;
+		System.out.print(new ProgramGenerator(seed).generate(Integer.parseInt(args[0]), Mix.valueOf(args[1])));
+	}
+}
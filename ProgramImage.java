@@ -0,0 +1,115 @@
+/**************************************************************************
+* This class holds a machine level program that has been parsed, decoded, *
+* and verified once, so any number of Simpletrons can be loaded from it   *
+* without reading the program file again. An image is never modified.     *
+* Its translation to JVM bytecode is made by the first TRANSLATED run and *
+* shared by the ones after it.                                            *
+* A Simpletron loaded from an image runs on the image's memory and copies *
+* it the first time the program stores a word.                            *
+**************************************************************************/
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+
+public class ProgramImage {
+	private final int[] words;          //memory of the program, shared by every Simpletron loaded from it
+	private final int[] opcodes;        //decoded as Simpletron decodes them, one extra entry past the end of memory
+	private final int[] operands;
+	private final ProgramVerifier verifier;
+	private final WordFormat format;
+	private MethodHandle translated;    //made by the first translated(), null until then
+	private boolean refused;            //true if BytecodeTranslator refused the program
+
+	//pre:  image holds at most MEMORY_SIZE words
+	//post: an image of the program in image, the array itself is not used after this returns.
+	//      Throws IllegalArgumentException if a word is out of range
+	public ProgramImage(int[] image) {
+		this(image, WordFormat.STANDARD);
+	}
+
+	//pre:  image holds at most format.getMemorySize() words
+	//post: an image of a program in format, it can only be loaded by Simpletrons of the same format
+	public ProgramImage(int[] image, WordFormat format) {
+		this.format = format;
+		int size = format.getMemorySize();
+		if (image.length > size)
+			throw new IllegalArgumentException("*** index out of bounds ***");
+		words = new int[size];
+		for (int i = 0; i < image.length; i++) {
+			if (image[i] > format.getMaxWord() || image[i] < format.getMinWord())
+				throw new IllegalArgumentException("*** overflow occured ***");
+			words[i] = image[i];
+		}
+
+		opcodes  = new int[size + 1];
+		operands = new int[size + 1];
+		for (int i = 0; i < size; i++)
+			Simpletron.decodeWord(words, i, opcodes, operands, format.getOperandRadix());
+
+		verifier = new ProgramVerifier(words, format.getOperandRadix());
+		verifier.verify();
+	}
+
+	//post: returns the image of a program file
+	public static ProgramImage load(String fileName) throws IOException {
+		return new ProgramImage(Simpletron.readImage(fileName));
+	}
+
+	//post: returns the image of a program file in format, text files only unless format is standard
+	public static ProgramImage load(String fileName, WordFormat format) throws IOException {
+		return new ProgramImage(Simpletron.readImage(fileName, format), format);
+	}
+
+	public WordFormat getFormat() {
+		return format;
+	}
+
+	public int getWord(int address) {
+		return words[address];
+	}
+
+	//post: returns a copy of the memory of the program
+	public int[] toArray() {
+		return words.clone();
+	}
+
+	public boolean isVerified() {
+		return verifier.isVerified();
+	}
+
+	//post: returns the reason the program failed verification, null if it passed
+	public String getVerificationError() {
+		return verifier.getError();
+	}
+
+	//the arrays below are shared with every Simpletron loaded from the image, which must not modify them
+
+	int[] words() {
+		return words;
+	}
+
+	int[] opcodes() {
+		return opcodes;
+	}
+
+	int[] operands() {
+		return operands;
+	}
+
+	ProgramVerifier verifier() {
+		return verifier;
+	}
+
+	//pre:  the format is standard
+	//post: returns the program translated by BytecodeTranslator, translated the first time it is asked
+	//      for, null if the translator refuses it
+	synchronized MethodHandle translated() {
+		if (translated == null && !refused) {
+			BytecodeTranslator translator = new BytecodeTranslator(words);
+			if (translator.translate())
+				translated = translator.getProgram();
+			else
+				refused = true;
+		}
+		return translated;
+	}
+}
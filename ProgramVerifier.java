@@ -0,0 +1,147 @@
+/**************************************************************************
+* This class checks a loaded machine level program before it is run.      *
+* Starting at address 0 it follows every path the program can take and   *
+* proves that each reachable word is a valid instruction, that every      *
+* branch stays in memory, that no instruction reads or writes the words   *
+* holding code, and that nothing divides by a constant zero. Programs     *
+* that pass can be run without the checks the Simpletron makes on every   *
+* instruction.                                                            *
+**************************************************************************/
+import java.util.ArrayDeque;
+
+public class ProgramVerifier {
+	private int[] memory;        //program being verified, it is not modified
+	private boolean[] code;      //true for every word that can be executed
+	private boolean[] data;      //true for every word an instruction reads or writes
+	private boolean[] written;   //true for every word that READ or STORE can change
+	private String error;        //reason the program failed verification, null if it passed
+	private boolean verified;
+	private int radix;           //a word is operation code * radix + operand
+
+	public ProgramVerifier(int[] memory) {
+		this(memory, WordFormat.STANDARD.getOperandRadix());
+	}
+
+	//post: a verifier for memory in a format with operand radix radix, see WordFormat
+	public ProgramVerifier(int[] memory, int radix) {
+		this.memory = memory;
+		this.radix = radix;
+		code    = new boolean[memory.length];
+		data    = new boolean[memory.length];
+		written = new boolean[memory.length];
+	}
+
+	//post: returns true if the program is well formed, otherwise getError() describes the first problem found
+	public boolean verify() {
+		return verify(0);
+	}
+
+	//post: like verify(), for a program whose execution starts at start, a restored Snapshot for example
+	public boolean verify(int start) {
+		error = null;
+		if (start < 0 || start >= memory.length) {
+			error = "execution starts outside memory";
+			verified = false;
+			return false;
+		}
+		verified = findCode(start) && checkData();
+		return verified;
+	}
+
+	public boolean isVerified() {
+		return verified;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	//pre:  verify() has been called
+	//post: returns true if the word at address can be executed
+	public boolean isCode(int address) {
+		return code[address];
+	}
+
+	//pre:  verify() has been called
+	//post: returns true if READ or STORE can change the word at address
+	public boolean isWritten(int address) {
+		return written[address];
+	}
+
+	//post: code, data, and written are filled in for every reachable instruction
+	//      false if a reachable word is not a valid instruction or execution can leave memory
+	private boolean findCode(int start) {
+		ArrayDeque<Integer> pending = new ArrayDeque<>();
+		pending.push(start);
+
+		while (!pending.isEmpty()) {
+			int address = pending.pop();
+			if (address >= memory.length) {
+				error = "execution runs past the end of memory";
+				return false;
+			}
+			if (code[address])
+				continue;
+			code[address] = true;
+
+			int operationCode = memory[address] / radix;
+			int operand       = memory[address] % radix;
+			if (operand < 0 || operand >= memory.length) {
+				error = "operand out of bounds at address " + address;
+				return false;
+			}
+
+			switch (operationCode) {
+				case Simpletron.READ:
+				case Simpletron.STORE:      written[operand] = true;
+											data[operand] = true;
+											pending.push(address + 1);
+											break;
+				case Simpletron.WRITE:
+				case Simpletron.LOAD:
+				case Simpletron.ADD:
+				case Simpletron.SUBTRACT:
+				case Simpletron.DIVIDE:
+				case Simpletron.MULTIPLY:
+				case Simpletron.REMAINDER:
+				case Simpletron.POWER:      data[operand] = true;
+											pending.push(address + 1);
+											break;
+				case Simpletron.NEWLINE:    pending.push(address + 1);
+											break;
+				case Simpletron.BRANCH:     pending.push(operand);
+											break;
+				case Simpletron.BRANCHNEG:
+				case Simpletron.BRANCHZERO: pending.push(operand);
+											pending.push(address + 1);
+											break;
+				case Simpletron.HALT:       break;
+				default:                    error = "invalid operation code at address " + address;
+											return false;
+			}
+		}
+		return true;
+	}
+
+	//pre:  findCode() succeeded
+	//post: false if an instruction uses a word holding code, or divides by a word that is always zero
+	private boolean checkData() {
+		for (int i = 0; i < memory.length; i++) {
+			if (code[i] && data[i]) {
+				error = "address " + i + " is used as both code and data";
+				return false;
+			}
+			if (!code[i])
+				continue;
+
+			int operationCode = memory[i] / radix;
+			int operand       = memory[i] % radix;
+			if ((operationCode == Simpletron.DIVIDE || operationCode == Simpletron.REMAINDER)
+					&& !written[operand] && memory[operand] == 0) {
+				error = "divide by constant zero at address " + i;
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,93 @@
+/**************************************************************************
+* Input that passes the integers of another input through and records     *
+* each one in a replay log, so the run can be repeated exactly with       *
+* ReplayInput. The log is the bytes "SRL1" followed by every value as a   *
+* zigzag varint, so small values take a single byte.                     *
+*                                                                         *
+* usage: java RecordingInput program.txt log                              *
+* runs the program on the console and records what the user types         *
+**************************************************************************/
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+public class RecordingInput implements SimpletronInput {
+	static final byte[] MAGIC = {'S', 'R', 'L', '1'};
+
+	private SimpletronInput source;
+	private OutputStream log;
+	private int recorded;
+
+	//post: values read from source are written to log, the header is written now
+	public RecordingInput(SimpletronInput source, OutputStream log) throws IOException {
+		this.source = source;
+		this.log = new BufferedOutputStream(log);
+		this.log.write(MAGIC);
+	}
+
+	public static RecordingInput toFile(SimpletronInput source, String fileName) throws IOException {
+		return new RecordingInput(source, new FileOutputStream(fileName));
+	}
+
+	//post: returns the next value of source and records it. Each value is flushed to the log as it
+	//      is taken, so a run that fails still leaves every value it read
+	@Override
+	public int nextInt() {
+		int value = source.nextInt();
+		try {
+			writeVarint((value << 1) ^ (value >> 31));
+			log.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		recorded++;
+		return value;
+	}
+
+	@Override
+	public boolean ready() {
+		return source.ready();
+	}
+
+	@Override
+	public boolean isInteractive() {
+		return source.isInteractive();
+	}
+
+	//post: returns the number of values recorded
+	public int getRecordedCount() {
+		return recorded;
+	}
+
+	public void close() throws IOException {
+		log.close();
+	}
+
+	private void writeVarint(int value) throws IOException {
+		while ((value & ~0x7f) != 0) {
+			log.write((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		log.write(value);
+	}
+
+	public static void main(String [] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("usage: java RecordingInput program.txt log");
+			return;
+		}
+		RecordingInput input = toFile(new StreamInput(System.in, true), args[1]);
+		Simpletron simpletron = new Simpletron(args[0], input);
+		try {
+			simpletron.loadProgram();
+			simpletron.executeProgram();
+		} catch (SimpletronException e) {
+			//the log holds what was read before the failure, which is enough to replay it
+		} finally {
+			input.close();
+		}
+		System.out.println(input.getRecordedCount() + " values recorded in " + args[1]);
+	}
+}
@@ -0,0 +1,89 @@
+/**************************************************************************
+* Input that feeds a Simpletron the values of a replay log written by     *
+* RecordingInput. The whole log is decoded when the input is created, so  *
+* a replay reads as fast as an ArrayInput and can be used to repeat a run *
+* exactly, as a regression test or a benchmark.                           *
+*                                                                         *
+* usage: java ReplayInput program.txt log [runs]                          *
+* replays the log, prints the output once and the time of the fastest run *
+**************************************************************************/
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+public class ReplayInput extends ArrayInput {
+	public ReplayInput(int... values) {
+		super(values);
+	}
+
+	//post: returns an input that replays the log in fileName
+	public static ReplayInput load(String fileName) throws IOException {
+		return new ReplayInput(readLog(fileName));
+	}
+
+	//post: returns the values recorded in the log in fileName
+	public static int[] readLog(String fileName) throws IOException {
+		try (InputStream stream = new FileInputStream(fileName)) {
+			return decode(stream);
+		}
+	}
+
+	//post: returns the values recorded in a replay log, throws IOException if it is not one
+	public static int[] decode(InputStream stream) throws IOException {
+		InputStream in = new BufferedInputStream(stream);
+		byte[] magic = new byte[RecordingInput.MAGIC.length];
+		if (in.read(magic) != magic.length || !Arrays.equals(magic, RecordingInput.MAGIC))
+			throw new IOException("not a replay log");
+
+		int[] values = new int[64];
+		int count = 0;
+		while (true) {
+			int b = in.read();
+			if (b < 0)
+				break;
+			int zigzag = 0;
+			for (int shift = 0; ; shift += 7) {
+				if (b < 0 || shift > 28)
+					throw new IOException("truncated replay log");
+				zigzag |= (b & 0x7f) << shift;
+				if ((b & 0x80) == 0)
+					break;
+				b = in.read();
+			}
+			if (count == values.length)
+				values = Arrays.copyOf(values, count * 2);
+			values[count++] = (zigzag >>> 1) ^ -(zigzag & 1);
+		}
+		return Arrays.copyOf(values, count);
+	}
+
+	public static void main(String [] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("usage: java ReplayInput program.txt log [runs]");
+			return;
+		}
+		ProgramImage image = ProgramImage.load(args[0]);
+		int[] values = readLog(args[1]);
+		int runs = (args.length > 2) ? Integer.parseInt(args[2]) : 1;
+
+		long fastest = Long.MAX_VALUE;
+		String transcript = null;
+		for (int i = 0; i < runs; i++) {
+			StringOutput output = new StringOutput();
+			Simpletron simpletron = new Simpletron(new ReplayInput(values), output);
+			simpletron.loadProgram(image);
+			long start = System.nanoTime();
+			try {
+				simpletron.executeProgram();
+			} catch (SimpletronException e) {
+				//a failure is replayed like everything else
+			}
+			fastest = Math.min(fastest, System.nanoTime() - start);
+			transcript = output.getTranscript();
+		}
+		System.out.print(transcript);
+		System.out.printf("%d values replayed, fastest of %d runs %.3f ms%n", values.length, runs, fastest / 1e6);
+	}
+}
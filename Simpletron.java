@@ -3,17 +3,25 @@
 * are written as a list of five digit numbers with an operation code     *
 * corresponding to the first two digits of a five digit decimal number,   * 
 * and the last three digits corresponding to an operand.                    *
+*                                                                         *
+* A Simpletron keeps all of its state in the instance, so any number of   *
+* them can run in one JVM. Input and output go through a SimpletronInput  *
+* and a SimpletronOutput, and fatal errors throw a SimpletronException.   *
 **************************************************************************/
 import java.util.Scanner;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
 import java.util.Arrays;
-import java.io.PrintWriter;
+import java.util.NoSuchElementException;
+import java.util.ArrayList;
 
 public class Simpletron {
-	private static final int MEMORY_SIZE   = 1000;
-	private static final int MAX_WORD_SIZE = 99999;
-	private static final int MIN_WORD_SIZE = -99999;
+	static final int MEMORY_SIZE   = 1000;
+	static final int MAX_WORD_SIZE = 99999;
+	static final int MIN_WORD_SIZE = -99999;
 
 	//operation code constants
 	public static final int READ       = 10;
@@ -35,8 +43,48 @@ public class Simpletron {
 	public static final int BRANCHZERO = 42;
 	public static final int HALT       = 43;
 
+	//ways executeProgram can run a loaded program, all of them produce identical output
+	public enum ExecutionMode {
+		INTERPRETED, //fetch, decode, and check every word as it is executed, for programs that fail
+		             //ProgramVerifier and for slices. Verified programs run in executeVerified
+		DECODED,     //decode the image once into opcode/operand arrays, and dispatch over those
+		FUSED,       //like DECODED, but common instruction sequences run as one superinstruction
+		TRANSLATED,  //translate the program to JVM bytecode with BytecodeTranslator, see executeTranslated
+		TIERED       //like DECODED, but blocks that are branched to often are compiled into closures
+	}
+
+	//how a call to executeSlice ended
+	public enum SliceResult {
+		YIELDED,     //the instruction budget of the slice ran out
+		BLOCKED,     //a READ found no input ready, it is executed again by the next slice
+		HALTED       //the program halted
+	}
+
+	private static final int DEFAULT_TIER_THRESHOLD = 50;
+	private static final int DEFAULT_MAX_COMPILES   = 8;
+
+	//marks a decoded entry that must be decoded again before it is dispatched
+	private static final int UNDECODED = -1;
+
+	//superinstructions are FUSED plus the operation code that distinguishes them
+	//  FUSED + ADD..POWER    LOAD x; op y; STORE t
+	//  FUSED + BRANCHNEG     LOAD a; SUBTRACT b; BRANCHNEG L
+	//  FUSED + BRANCHZERO    LOAD a; SUBTRACT b; BRANCHZERO L
+	//  FUSED + STORE         LOAD t; STORE v
+	private static final int FUSED = 100;
+
+	//memory of a standard Simpletron that has not loaded a program yet, it is shared like a ProgramImage
+	private static final int[] BLANK_MEMORY = new int[MEMORY_SIZE];
+
+	private final WordFormat format;
+	private final int memorySize;    //words of memory, MEMORY_SIZE in the standard format
+	private final int radix;         //a word is operation code * radix + operand
+	private final int maxWord;       //largest word and accumulator, minWord is the smallest
+	private final int minWord;
 
 	private int[] memory;			 //program is stored here
+	private boolean sharedMemory;    //true while memory is shared with other Simpletrons, it is copied before the first store
+	private ProgramImage image;      //image the program was loaded from, null if it was loaded word by word
 	private int accumulator;
 	private int instructionCounter;  //location in memory whose instruction is being performed now
 
@@ -44,22 +92,164 @@ public class Simpletron {
 	private int operand;		     //memory location where operation is being operated on last three of instructionRegister
 	private int instructionRegister; //full instruction word
 
-	private String fileName;
-	private PrintWriter writer;
+	private String fileName;         //program file, null if the program was loaded from an array
+	private SimpletronInput input;
+	private SimpletronOutput output;
+	private boolean console;         //true if every run gets a new ConsoleOutput
+	long instructionsExecuted;       //by every loop, and by the code BytecodeTranslator generates
+
+	private ExecutionMode executionMode;
+	private Profiler profiler;       //counts what executeProgram runs, null unless profiling
+	private int[] opcodes;           //decoded operation codes, one extra entry past the end of memory
+	private int[] operands;          //decoded operands, parallel to opcodes
+	private ProgramVerifier verifier; //proves the loaded program well formed, see executeVerified
+	private int[] secondOperands;    //second operand of a superinstruction
+	private int[] thirdOperands;     //third operand of a superinstruction
+	private int fusedCount;          //superinstructions in the loaded program
+	private long dispatchesSaved;    //dispatches superinstructions have avoided so far
 
+	//TIERED mode state, indexed by the address a block starts at
+	private int tierThreshold;       //times a branch target is reached before its block is compiled
+	private int maxCompiles;         //times a block may be compiled before it is left to the interpreter
+	private int[] hotness;           //times each branch target was reached since its block was last compiled
+	private int[] compileCounts;     //times a block was compiled
+	private CompiledBlock[] blocks;  //compiled block starting at each address, null if there is none
+	private int[] blockCover;        //number of compiled blocks containing each address
+	private ArrayList<CompiledBlock> liveBlocks;
+	private int deoptimizations;
 
+
+	//post: a Simpletron that loads fileName, reads from System.in, and prints to System.out
+	//      and to a transcript named after fileName with the extension .out
 	public Simpletron(String fileName) {
-		memory = new int[MEMORY_SIZE];
+		this(fileName, null);
+	}
+
+	//post: a Simpletron that loads fileName and reads from input, it prints like Simpletron(fileName).
+	//      input is the console if it is null
+	public Simpletron(String fileName, SimpletronInput input) {
+		this(fileName, input, WordFormat.STANDARD);
+	}
+
+	//post: like Simpletron(fileName, input), with memory and words in format
+	public Simpletron(String fileName, SimpletronInput input, WordFormat format) {
+		this(input, null, format);
+		this.fileName = fileName;
+		console = true;
+	}
+
+	//post: a Simpletron that reads from input and prints to output, its program is loaded with loadProgram(int[])
+	public Simpletron(SimpletronInput input, SimpletronOutput output) {
+		this(input, output, WordFormat.STANDARD);
+	}
+
+	//post: like Simpletron(input, output), with memory and words in format
+	public Simpletron(SimpletronInput input, SimpletronOutput output, WordFormat format) {
+		this.input = input;
+		this.output = output;
+		this.format = format;
+		memorySize = format.getMemorySize();
+		radix      = format.getOperandRadix();
+		maxWord    = format.getMaxWord();
+		minWord    = format.getMinWord();
+		if (memorySize == MEMORY_SIZE) {
+			memory = BLANK_MEMORY;
+			sharedMemory = true;
+		} else {
+			memory = new int[memorySize];
+		}
 		accumulator 	    = 0;
 		instructionCounter  = 0;
 		operationCode       = 0;
 		operand             = 0;
 		instructionRegister = 0;
-		this.fileName = fileName;
+		executionMode = ExecutionMode.INTERPRETED;
+		tierThreshold = DEFAULT_TIER_THRESHOLD;
+		maxCompiles   = DEFAULT_MAX_COMPILES;
+	}
+
+	public void setExecutionMode(ExecutionMode executionMode) {
+		this.executionMode = executionMode;
+	}
+
+	public ExecutionMode getExecutionMode() {
+		return executionMode;
+	}
+
+	//post: returns the number of superinstructions the FUSED mode built for the program
+	public int getFusedCount() {
+		return fusedCount;
+	}
+
+	//post: returns the number of instruction dispatches the FUSED mode did not have to make
+	public long getDispatchesSaved() {
+		return dispatchesSaved;
+	}
+
+	//pre:  threshold > 0
+	//post: the TIERED mode compiles a block once its first word has been branched to threshold times
+	public void setTierThreshold(int threshold) {
+		tierThreshold = threshold;
+	}
+
+	public int getTierThreshold() {
+		return tierThreshold;
+	}
+
+	//post: a block that has been compiled and deoptimized max times is no longer compiled
+	public void setMaxCompiles(int max) {
+		maxCompiles = max;
+	}
+
+	public int getMaxCompiles() {
+		return maxCompiles;
+	}
+
+	//pre:  profiler is null or was made for a memory of this Simpletron's size
+	//post: executeProgram runs the program in the profiled loop, whatever the execution mode, and counts
+	//      each instruction into profiler. null turns profiling off again
+	public void setProfiler(Profiler profiler) {
+		if (profiler != null && profiler.getMemorySize() != memorySize)
+			throw new IllegalArgumentException("profiler is for a memory of " + profiler.getMemorySize() + " words");
+		this.profiler = profiler;
+	}
+
+	public Profiler getProfiler() {
+		return profiler;
+	}
+
+	//post: returns the number of blocks currently compiled by the TIERED mode
+	public int getCompiledBlockCount() {
+		return liveBlocks == null ? 0 : liveBlocks.size();
+	}
+
+	//post: returns the number of times the block starting at address has been compiled
+	public int getCompileCount(int address) {
+		return compileCounts == null ? 0 : compileCounts[address];
 	}
 
+	//post: returns the number of compiled blocks thrown away because one of their words was written
+	public int getDeoptimizationCount() {
+		return deoptimizations;
+	}
+
+	//post: the program in fileName is loaded, from the object format if the file is in it (see
+	//      ObjectFile), otherwise from text with one word per line
 	public void loadProgram () {
+		SimpletronEvents.ProgramLoad event = SimpletronEvents.beginLoad();
 		clearMemory();
+		int[] object = null;
+		try {
+			object = ObjectFile.read(fileName);
+		} catch (IOException e) {fatalError("*** error loading program ***");}
+		if (object != null) {
+			if (!format.isStandard()) //object files hold standard programs only
+				fatalError("*** error loading program ***");
+			storeProgram(object);
+			loaded(event, fileName);
+			return;
+		}
+
 		try {
 			Scanner scanner = new Scanner(new File(fileName));
 			int i = 0;
@@ -68,11 +258,126 @@ public class Simpletron {
 			}
 			scanner.close();
 		} catch (FileNotFoundException e) {fatalError("*** error loading program ***");}
+
+		verifier = new ProgramVerifier(memory, radix);
+		verifier.verify();
+		loaded(event, fileName);
+	}
+
+	//pre:  image holds at most memorySize words
+	//post: the program in image is loaded, the array itself is not used after this returns
+	public void loadProgram(int[] image) {
+		SimpletronEvents.ProgramLoad event = SimpletronEvents.beginLoad();
+		storeProgram(image);
+		loaded(event, "array");
+	}
+
+	private void storeProgram(int[] image) {
+		clearMemory();
+		for (int i = 0; i < image.length; i++)
+			storeWord(i, image[i]);
+
+		verifier = new ProgramVerifier(memory, radix);
+		verifier.verify();
+	}
+
+	//post: the program in image is loaded without copying it. The image's memory, decoded words, and
+	//      verification are shared, memory is copied the first time the program stores a word
+	public void loadProgram(ProgramImage image) {
+		if (!image.getFormat().equals(format))
+			throw new IllegalArgumentException("image is for " + image.getFormat() + ", not " + format);
+		SimpletronEvents.ProgramLoad event = SimpletronEvents.beginLoad();
+		resetRegisters(); //memory is replaced by the image's, so none is allocated or cleared for it
+		this.image = image;
+		memory = image.words();
+		sharedMemory = true;
+		verifier = image.verifier();
+		loaded(event, "image");
+	}
+
+	//post: the program a Compiler compiled in memory is loaded, see loadProgram(ProgramImage). Throws
+	//      IllegalArgumentException if it did not compile or is for another format
+	public void loadProgram(CompilationResult result) {
+		if (!result.isSuccessful())
+			throw new IllegalArgumentException("the program did not compile");
+		loadProgram(result.toImage());
+	}
+
+	private void loaded(SimpletronEvents.ProgramLoad event, String source) {
+		SimpletronEvents.endLoad(event, source, memorySize, isVerified(), getVerificationError());
+	}
+
+	//post: returns the state of the machine. The snapshot shares memory with the Simpletron, which copies
+	//      it before it next stores a word
+	public Snapshot snapshot() {
+		sharedMemory = true;
+		return new Snapshot(format, memory, accumulator, instructionCounter, instructionRegister,
+				operationCode, operand, instructionsExecuted);
+	}
+
+	//post: the machine is in the state of snapshot, and executeProgram or executeSlice continue from there.
+	//      The snapshot's memory is shared like an image's, so many Simpletrons can be forked from one
+	public void restore(Snapshot snapshot) {
+		if (!snapshot.getFormat().equals(format))
+			throw new IllegalArgumentException("snapshot is for " + snapshot.getFormat() + ", not " + format);
+		image = null;
+		memory = snapshot.memory();
+		sharedMemory = true;
+		accumulator         = snapshot.getAccumulator();
+		instructionCounter  = snapshot.getInstructionCounter();
+		instructionRegister = snapshot.getInstructionRegister();
+		operationCode       = snapshot.getOperationCode();
+		operand             = snapshot.getOperand();
+		instructionsExecuted = snapshot.getInstructionsExecuted();
+		verifier = snapshot.verifier();
+	}
+
+	//post: returns true if the loaded program passed verification and runs on the unchecked path
+	public boolean isVerified() {
+		return verifier != null && verifier.isVerified();
+	}
+
+	//post: returns the reason the loaded program failed verification, null if it passed
+	public String getVerificationError() {
+		return verifier == null ? null : verifier.getError();
+	}
+
+	//post: returns the words of a program file in either format, unused memory is 0
+	static int[] readImage(String fileName) throws IOException {
+		return readImage(fileName, WordFormat.STANDARD);
+	}
+
+	//post: returns the words of a program file for a Simpletron in format, object files are read only
+	//      for the standard format
+	static int[] readImage(String fileName, WordFormat format) throws IOException {
+		int[] image = ObjectFile.read(fileName);
+		if (image != null) {
+			if (!format.isStandard())
+				throw new IOException("object files hold standard programs only");
+			return image;
+		}
+		image = new int[format.getMemorySize()];
+		Scanner scanner = new Scanner(new File(fileName));
+		for (int i = 0; i < image.length && scanner.hasNext(); i++)
+			image[i] = scanner.nextInt();
+		scanner.close();
+		return image;
 	}
 
 	//post: sets all member variables to 0
 	private void clearMemory() {
-		Arrays.fill(memory, 0);
+		if (sharedMemory) {
+			memory = new int[memorySize];
+			sharedMemory = false;
+		} else {
+			Arrays.fill(memory, 0);
+		}
+		image = null;
+		resetRegisters();
+	}
+
+	//post: sets the registers to 0, memory is left as it is
+	private void resetRegisters() {
 		accumulator 	    = 0;
 		instructionCounter  = 0;
 		operationCode       = 0;
@@ -83,57 +388,163 @@ public class Simpletron {
 	//pre:  index, and word are in range
 	//post: word is stored in memory
 	private void storeWord(int index, int word) {
-		if (word > MAX_WORD_SIZE || word < MIN_WORD_SIZE) {
+		if (word > maxWord || word < minWord) {
 			fatalError("*** overflow occured ***");
 		}
-		if (index > (MEMORY_SIZE-1) || index < 0) {
+		if (index > (memorySize-1) || index < 0) {
 			fatalError("*** index out of bounds ***");
 		}
 
-		memory[index] = word;
+		writableMemory()[index] = word;
+	}
+
+	//post: memory is no longer shared, it is copied if it was. Returns memory
+	private int[] writableMemory() {
+		if (sharedMemory) {
+			memory = memory.clone();
+			sharedMemory = false;
+		}
+		return memory;
 	}
 
 	//returns false if the accumulator has overflowed the max or min WORD_SIZE
 	private boolean isAccumulatorValid() {
-		if (accumulator > MAX_WORD_SIZE || accumulator < MIN_WORD_SIZE)
+		if (accumulator > maxWord || accumulator < minWord)
 			return false;
 		return true;
 	}
 
-	private void startPrintWriter() {
+	//post: a Simpletron created with a file name gets its console input and output
+	private void startConsole() {
+		if (input == null)
+			input = new StreamInput(System.in, true);
+		if (console && output == null) {
+			try {
+				output = new ConsoleOutput(fileName.substring(0,fileName.length()-3) + "out");
+			} catch (FileNotFoundException io) {fatalError("*** error opening output stream ***");}
+		}
+	}
+
+	//post: returns the next integer from input, a fatal error if there is none or the input fails
+	private int readInput() {
+		if (input.isInteractive())
+			output.flush(); //the prompt has to be on the screen before the user types
+		SimpletronEvents.ReadWait event = SimpletronEvents.beginReadWait();
+		long start = System.nanoTime();
 		try {
-			writer = new PrintWriter(fileName.substring(0,fileName.length()-3) + "out");
-		} catch (FileNotFoundException io) {fatalError("*** error opening output stream ***");}
+			return input.nextInt();
+		} catch (NoSuchElementException | UncheckedIOException e) {
+			fatalError("*** error reading input ***");
+			return 0;
+		} finally {
+			SimpletronMetrics.METRICS.ioWait(System.nanoTime() - start);
+			SimpletronEvents.endReadWait(event, instructionCounter);
+		}
 	}
 
+	//post: runs the loaded program until it halts, throws SimpletronException if it fails
 	public void executeProgram() {
-		Scanner input = new Scanner(System.in);
-		startPrintWriter();
+		startConsole();
 
-		while (true) {
+		SimpletronEvents.ExecutionEnd end = SimpletronEvents.beginExecution(executionMode.name(), memorySize);
+		long counted = instructionsExecuted;
+		SimpletronMetrics.METRICS.started();
+		boolean halted = false;
+		try {
+			runProgram();
+			halted = true;
+		} finally {
+			SimpletronMetrics.METRICS.finished(halted, !halted, instructionsExecuted - counted);
+			SimpletronEvents.endExecution(end, executionMode.name(), halted, instructionsExecuted - counted);
+		}
+	}
+
+	//post: runs the loaded program in the loop that executionMode and the program call for
+	private void runProgram() {
+		//only the checked loop checks the accumulator before each instruction, a program stopped by
+		//executeSlice or a snapshot right after an overflow fails at once
+		if (!isAccumulatorValid()) {
+			executeChecked(Long.MAX_VALUE);
+			return;
+		}
+		//profiling has a loop of its own, so the loops below never pay for it
+		if (profiler != null) {
+			executeProfiled();
+			return;
+		}
+		if (executionMode == ExecutionMode.TRANSLATED && executeTranslated())
+			return;
+		if (executionMode == ExecutionMode.TIERED) {
+			executeTiered();
+			return;
+		}
+		//superinstructions span several words, so they are only built for programs that can't modify their code
+		if (executionMode == ExecutionMode.FUSED && isVerified()) {
+			executeFused();
+			return;
+		}
+		if (isVerified()) {
+			executeVerified();
+			return;
+		}
+		if (executionMode != ExecutionMode.INTERPRETED) {
+			executeDecoded();
+			return;
+		}
+
+		executeChecked(Long.MAX_VALUE);
+	}
+
+	//post: runs at most budget instructions of the loaded program and returns why it stopped. The next
+	//      call continues where this one stopped, so a program can be run a slice at a time. Slices always
+	//      run in the checked loop, whatever the execution mode
+	public SliceResult executeSlice(long budget) {
+		startConsole();
+		long counted = instructionsExecuted;
+		SimpletronMetrics.METRICS.started();
+		SliceResult result = null;
+		try {
+			result = executeChecked(budget);
+		} finally {
+			SimpletronMetrics.METRICS.finished(result == SliceResult.HALTED, result == null,
+					instructionsExecuted - counted);
+		}
+		return result;
+	}
+
+	//post: returns the number of instructions executeProgram and executeSlice have run
+	public long getInstructionsExecuted() {
+		return instructionsExecuted;
+	}
+
+	//post: fetches, checks, and executes at most budget instructions, see executeSlice
+	private SliceResult executeChecked(long budget) {
+		for (long executed = 0; executed < budget; executed++) {
 			//case when branch jumps the program out of bounds
-			if (instructionCounter >= MEMORY_SIZE || instructionCounter < 0)
+			if (instructionCounter >= memorySize || instructionCounter < 0)
 				fatalError("*** program execution failed ***");
 
 			instructionRegister = memory[instructionCounter];
-			operationCode = instructionRegister / 1000;
-			operand = instructionRegister % 1000;
+			operationCode = instructionRegister / radix;
+			operand = instructionRegister % radix;
 
 			if (!isAccumulatorValid())
 				fatalError("*** Overflow occured ***");
 
-			if (operand >= MEMORY_SIZE || operand < 0)
+			if (operand >= memorySize || operand < 0)
 				fatalError("*** operand index out of bounds ***");
 
 			switch (operationCode) {
 				//condense code branch, and branchneg are the only ops that don't instructioncounter++
-				case READ:        printString("Enter an integer: ");
-							      int n = input.nextInt();
+				case READ:        if (!input.ready())
+									  return SliceResult.BLOCKED;
+								  printString("Enter an integer: ");
+							      int n = readInput();
 							      storeWord(operand, n);
-							      writer.println(""+ n);
+							      output.echoWord(n);
 							      instructionCounter++;
 							      break;
-				case WRITE:       printString(memory[operand] + "\n");
+				case WRITE:       output.printWord(memory[operand]);
 							      instructionCounter++;
 							      break;
 			    case NEWLINE:     printString("\n");
@@ -181,91 +592,1009 @@ public class Simpletron {
 								  	  instructionCounter++;
 								  break;
 				case HALT:        printString("*** Simpletron execution terminated ***\n");
-				                  writer.close();
-							      return;
+				                  output.close();
+				                  instructionsExecuted++;
+							      return SliceResult.HALTED;
 				//invalid operation code
 				default:		  fatalError("*** Invalid operation code ***");
 
 			}
+			instructionsExecuted++;
 		}
+		return SliceResult.YIELDED;
 	}
 
-	private void printString(String string) {
-		System.out.print(string);
-		writer.print(string);
+	//post: runs the program one instruction at a time in the checked loop, counting each one into the
+	//      profiler, so the output and errors are those of the checked loop. An instruction that fails
+	//      is counted, a READ waiting for input is counted once it runs
+	private void executeProfiled() {
+		final Profiler profiler = this.profiler;
+		SliceResult result = SliceResult.YIELDED;
+		while (result != SliceResult.HALTED) {
+			int address = instructionCounter;
+			if (address >= memorySize || address < 0) {
+				executeChecked(1); //fails
+				return;
+			}
+			int code = memory[address] / radix;
+			boolean taken = (code == BRANCHNEG && accumulator < 0) || (code == BRANCHZERO && accumulator == 0);
+			result = SliceResult.YIELDED;
+			try {
+				result = executeChecked(1);
+			} finally {
+				if (result != SliceResult.BLOCKED)
+					profiler.record(address, code, taken);
+			}
+			if (result == SliceResult.BLOCKED)
+				Thread.yield();
+		}
 	}
 
+	//post: every word of memory is decoded into the opcodes and operands arrays. The extra entry
+	//      at memorySize is never valid, so running off the end of memory takes the fault path
+	//      The arrays are copied from the image when memory still holds it, the loops may change them
+	private void decodeProgram() {
+		if (image != null && memory == image.words()) {
+			opcodes  = image.opcodes().clone();
+			operands = image.operands().clone();
+			return;
+		}
+		opcodes  = new int[memorySize + 1];
+		operands = new int[memorySize + 1];
+		for (int i = 0; i < memorySize; i++)
+			decodeWord(i);
+		opcodes[memorySize] = 0;
+	}
 
-	//post: all of the variables are printed to the screen
-	private void dumpMemory() {
-		printString("REGISTERS:\n");
-		printString("accumulator" + "          " + formatWord(accumulator) + "\n");
-		printString("instructionCounter" + "   " + "   " + formatCode(instructionCounter, 3) + "\n");
-		printString("instructionRegister" + "  " + formatWord(instructionRegister) + "\n");
-		printString("operationCode" + "        " + "    " + formatCode(operationCode, 2) + "\n");
-		printString("operand" + "              " + "   " + formatCode(operand, 3) + "\n");
-		printString("\n" + "MEMORY:" + "\n");
-		printString("   ");
-
-		final int DIMEN = 10;
-		for (int i = 0; i < DIMEN; i++) {
-			printString("      " + i);
+	private void decodeWord(int address) {
+		decodeWord(memory, address, opcodes, operands, radix);
+	}
+
+	//post: the word at address is decoded. Words the checked loop would reject are decoded
+	//      as opcode 0 so they are dispatched to the fault path
+	static void decodeWord(int[] memory, int address, int[] opcodes, int[] operands, int radix) {
+		int word = memory[address];
+		int code = word / radix;
+		int arg  = word % radix;
+		if (arg < 0 || arg >= memory.length || !isOperationCode(code)) {
+			code = 0;
+			arg  = 0;
 		}
-		printString("\n");
+		opcodes[address]  = code;
+		operands[address] = arg;
+	}
+
+	private static boolean isOperationCode(int code) {
+		switch (code) {
+			case READ: case WRITE: case NEWLINE: case LOAD: case STORE:
+			case ADD: case SUBTRACT: case DIVIDE: case MULTIPLY: case REMAINDER: case POWER:
+			case BRANCH: case BRANCHNEG: case BRANCHZERO: case HALT:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	//post: registers hold the state the checked loop would have after fetching the word at address
+	private void fetchRegisters(int address) {
+		instructionCounter  = address;
+		instructionRegister = memory[address];
+		operationCode       = instructionRegister / radix;
+		operand             = instructionRegister % radix;
+	}
+
+	//pre:  the decoded loop could not dispatch the word at address
+	//post: the same fatal error the checked loop reports for that word
+	private void decodedFault(int address) {
+		if (address >= memorySize || address < 0) {
+			//only falling through from the last word leaves memory, its registers are still loaded
+			fetchRegisters(memorySize - 1);
+			instructionCounter = address;
+			fatalError("*** program execution failed ***");
+		}
+		fetchRegisters(address);
+		if (!isAccumulatorValid())
+			fatalError("*** Overflow occured ***");
+		if (operand >= memorySize || operand < 0)
+			fatalError("*** operand index out of bounds ***");
+		fatalError("*** Invalid operation code ***");
+	}
+
+	//runs the loaded program over pre-decoded opcode and operand arrays. The accumulator can only leave
+	//its range through arithmetic, so it is checked there instead of before every instruction. Every write
+	//into memory marks the decoded entry of that word, so programs that modify their own code still run
+	//exactly as they do in the checked loop
+	private void executeDecoded() {
+		decodeProgram();
+		final int[] memory   = writableMemory(); //the decoded words are a copy too, so memory is copied up front
+		final int[] opcodes  = this.opcodes;
+		final int[] operands = this.operands;
+		final int maxWord    = this.maxWord;
+		final int minWord    = this.minWord;
+		int acc = accumulator;
+		int pc  = instructionCounter;
+
+		long executed = 0; //instructions run, added to instructionsExecuted however the loop ends
+		try {
+			while (true) {
+				executed++;
+				int arg = operands[pc];
+				switch (opcodes[pc]) {
+					case READ:        accumulator = acc;
+									  fetchRegisters(pc);
+									  printString("Enter an integer: ");
+									  int n = readInput();
+									  storeWord(arg, n);
+									  opcodes[arg] = UNDECODED;
+									  output.echoWord(n);
+									  pc++;
+									  break;
+					case WRITE:       output.printWord(memory[arg]);
+									  pc++;
+									  break;
+					case NEWLINE:     printString("\n");
+									  pc++;
+									  break;
+					case LOAD:        acc = memory[arg];
+									  pc++;
+									  break;
+					case STORE:       memory[arg] = acc;
+									  opcodes[arg] = UNDECODED;
+									  acc = 0;
+									  pc++;
+									  break;
+					case ADD:         acc += memory[arg];
+									  if (acc > maxWord || acc < minWord) {
+										  accumulator = acc;
+										  decodedFault(pc + 1);
+									  }
+									  pc++;
+									  break;
+					case SUBTRACT:    acc -= memory[arg];
+									  if (acc > maxWord || acc < minWord) {
+										  accumulator = acc;
+										  decodedFault(pc + 1);
+									  }
+									  pc++;
+									  break;
+					case DIVIDE:      if (memory[arg] == 0) {
+										  accumulator = acc;
+										  fetchRegisters(pc);
+										  fatalError("*** attempt to divide by zero ***");
+									  }
+									  acc /= memory[arg];
+									  pc++;
+									  break;
+					case MULTIPLY:    acc *= memory[arg];
+									  if (acc > maxWord || acc < minWord) {
+										  accumulator = acc;
+										  decodedFault(pc + 1);
+									  }
+									  pc++;
+									  break;
+					case REMAINDER:   if (memory[arg] == 0) {
+										  accumulator = acc;
+										  fetchRegisters(pc);
+										  fatalError("*** attempt to divide by zero ***");
+									  }
+									  acc %= memory[arg];
+									  pc++;
+									  break;
+					case POWER:       acc = (int)Math.pow(acc, memory[arg]);
+									  if (acc > maxWord || acc < minWord) {
+										  accumulator = acc;
+										  decodedFault(pc + 1);
+									  }
+									  pc++;
+									  break;
+					case BRANCH:      pc = arg;
+									  break;
+					case BRANCHNEG:   if (acc < 0)
+										  pc = arg;
+									  else
+										  pc++;
+									  break;
+					case BRANCHZERO:  if (acc == 0)
+										  pc = arg;
+									  else
+										  pc++;
+									  break;
+					case HALT:        accumulator = acc;
+									  fetchRegisters(pc);
+									  printString("*** Simpletron execution terminated ***\n");
+									  output.close();
+									  return;
+					case UNDECODED:   decodeWord(pc); //the word was written since it was decoded
+									  executed--;   //and is dispatched again
+									  break;
+					default:		  accumulator = acc;
+									  decodedFault(pc);
+				}
+			}
+		} catch (SimpletronException e) {
+			executed += instructionCounter - pc - 1; //the words of this dispatch before the one that failed
+			throw e;
+		} finally {
+			instructionsExecuted += executed;
+		}
+	}
+
+	//pre:  the loaded program passed verification, so every reachable word is a valid instruction,
+	//      execution never leaves memory, and no instruction reads or writes code
+	//post: runs the program without the per instruction checks, only arithmetic that can leave the
+	//      word range and division by a word that is written at run time are still checked
+	private void executeVerified() {
+		//nothing here changes the decoded words, so an image's are used as they are
+		if (image != null && memory == image.words()) {
+			opcodes  = image.opcodes();
+			operands = image.operands();
+		} else {
+			decodeProgram();
+		}
+		int[] memory = this.memory; //reloaded after a store that copies shared memory
+		final int[] opcodes  = this.opcodes;
+		final int[] operands = this.operands;
+		final int maxWord    = this.maxWord;
+		final int minWord    = this.minWord;
+		int acc = accumulator;
+		int pc  = instructionCounter;
+
+		long executed = 0; //instructions run, added to instructionsExecuted however the loop ends
+		try {
+			while (true) {
+				executed++;
+				int arg = operands[pc];
+				switch (opcodes[pc]) {
+					case READ:        accumulator = acc;
+									  fetchRegisters(pc);
+									  printString("Enter an integer: ");
+									  int n = readInput();
+									  storeWord(arg, n);
+									  memory = this.memory;
+									  output.echoWord(n);
+									  pc++;
+									  break;
+					case WRITE:       output.printWord(memory[arg]);
+									  pc++;
+									  break;
+					case NEWLINE:     printString("\n");
+									  pc++;
+									  break;
+					case LOAD:        acc = memory[arg];
+									  pc++;
+									  break;
+					case STORE:       if (sharedMemory)
+										  memory = writableMemory();
+									  memory[arg] = acc;
+									  acc = 0;
+									  pc++;
+									  break;
+					case ADD:         acc += memory[arg];
+									  if (acc > maxWord || acc < minWord) {
+										  accumulator = acc;
+										  decodedFault(pc + 1);
+									  }
+									  pc++;
+									  break;
+					case SUBTRACT:    acc -= memory[arg];
+									  if (acc > maxWord || acc < minWord) {
+										  accumulator = acc;
+										  decodedFault(pc + 1);
+									  }
+									  pc++;
+									  break;
+					case DIVIDE:      if (memory[arg] == 0) {
+										  accumulator = acc;
+										  fetchRegisters(pc);
+										  fatalError("*** attempt to divide by zero ***");
+									  }
+									  acc /= memory[arg];
+									  pc++;
+									  break;
+					case MULTIPLY:    acc *= memory[arg];
+									  if (acc > maxWord || acc < minWord) {
+										  accumulator = acc;
+										  decodedFault(pc + 1);
+									  }
+									  pc++;
+									  break;
+					case REMAINDER:   if (memory[arg] == 0) {
+										  accumulator = acc;
+										  fetchRegisters(pc);
+										  fatalError("*** attempt to divide by zero ***");
+									  }
+									  acc %= memory[arg];
+									  pc++;
+									  break;
+					case POWER:       acc = (int)Math.pow(acc, memory[arg]);
+									  if (acc > maxWord || acc < minWord) {
+										  accumulator = acc;
+										  decodedFault(pc + 1);
+									  }
+									  pc++;
+									  break;
+					case BRANCH:      pc = arg;
+									  break;
+					case BRANCHNEG:   if (acc < 0)
+										  pc = arg;
+									  else
+										  pc++;
+									  break;
+					case BRANCHZERO:  if (acc == 0)
+										  pc = arg;
+									  else
+										  pc++;
+									  break;
+					default:          accumulator = acc; //HALT, the verifier allows no other operation codes
+									  fetchRegisters(pc);
+									  printString("*** Simpletron execution terminated ***\n");
+									  output.close();
+									  return;
+				}
+			}
+		} catch (SimpletronException e) {
+			executed += instructionCounter - pc - 1; //the words of this dispatch before the one that failed
+			throw e;
+		} finally {
+			instructionsExecuted += executed;
+		}
+	}
+
+	//pre:  decodeProgram() has been called on a verified program
+	//post: every LOAD that starts a sequence listed at FUSED is replaced with its superinstruction.
+	//      Sequences are only fused when no branch lands inside them
+	private void fuseProgram() {
+		secondOperands = new int[memorySize + 1];
+		thirdOperands  = new int[memorySize + 1];
+		fusedCount = 0;
 
-		for (int i = 0; i < DIMEN*DIMEN; i++) {
-			if (i == 0) {
-				printString("  0");
-			} else if (i < 10) {
-				printString(" " + i + "0");
+		boolean[] isTarget = new boolean[memorySize + 1];
+		isTarget[0] = true;
+		for (int i = 0; i < memorySize; i++) {
+			if (verifier.isCode(i) && opcodes[i] >= BRANCH && opcodes[i] <= BRANCHZERO)
+				isTarget[operands[i]] = true;
+		}
+
+		for (int i = 0; i + 1 < memorySize; i++) {
+			if (!verifier.isCode(i) || opcodes[i] != LOAD || isTarget[i + 1])
+				continue;
+
+			int next = opcodes[i + 1];
+			int last = (i + 2 < memorySize && !isTarget[i + 2]) ? opcodes[i + 2] : 0;
+			if (next >= ADD && next <= POWER && last == STORE) {
+				opcodes[i] = FUSED + next;
+				secondOperands[i] = operands[i + 1];
+				thirdOperands[i]  = operands[i + 2];
+			} else if (next == SUBTRACT && (last == BRANCHNEG || last == BRANCHZERO)) {
+				opcodes[i] = FUSED + last;
+				secondOperands[i] = operands[i + 1];
+				thirdOperands[i]  = operands[i + 2];
+			} else if (next == STORE) {
+				opcodes[i] = FUSED + STORE;
+				secondOperands[i] = operands[i + 1];
 			} else {
-				printString(i + "0");
+				continue;
 			}
-			for (int n = 0; n < DIMEN; n++) {
-				printString(" " + formatWord(memory[i*DIMEN + n]));
+			fusedCount++;
+		}
+	}
+
+	//pre:  the loaded program passed verification
+	//post: runs the program like executeVerified, with every sequence fuseProgram() found run as a single
+	//      dispatch. Each superinstruction has exactly the effects of the words it replaces, including the
+	//      STORE clearing the accumulator, and reports faults against the word that would have caused them
+	private void executeFused() {
+		decodeProgram();
+		fuseProgram();
+		final int[] memory   = writableMemory();
+		final int[] opcodes  = this.opcodes;
+		final int[] operands = this.operands;
+		final int maxWord    = this.maxWord;
+		final int minWord    = this.minWord;
+		final int[] second   = this.secondOperands;
+		final int[] third    = this.thirdOperands;
+		int acc = accumulator;
+		int pc  = instructionCounter;
+		long saved = 0;
+		long dispatched = 0;
+
+		try {
+			while (true) {
+				dispatched++;
+				int arg = operands[pc];
+				switch (opcodes[pc]) {
+					case FUSED + ADD:       acc = memory[arg] + memory[second[pc]];
+											if (acc > maxWord || acc < minWord) {
+												accumulator = acc;
+												decodedFault(pc + 2);
+											}
+											memory[third[pc]] = acc;
+											acc = 0;
+											pc += 3;
+											saved += 2;
+											break;
+					case FUSED + SUBTRACT:  acc = memory[arg] - memory[second[pc]];
+											if (acc > maxWord || acc < minWord) {
+												accumulator = acc;
+												decodedFault(pc + 2);
+											}
+											memory[third[pc]] = acc;
+											acc = 0;
+											pc += 3;
+											saved += 2;
+											break;
+					case FUSED + MULTIPLY:  acc = memory[arg] * memory[second[pc]];
+											if (acc > maxWord || acc < minWord) {
+												accumulator = acc;
+												decodedFault(pc + 2);
+											}
+											memory[third[pc]] = acc;
+											acc = 0;
+											pc += 3;
+											saved += 2;
+											break;
+					case FUSED + POWER:     acc = (int)Math.pow(memory[arg], memory[second[pc]]);
+											if (acc > maxWord || acc < minWord) {
+												accumulator = acc;
+												decodedFault(pc + 2);
+											}
+											memory[third[pc]] = acc;
+											acc = 0;
+											pc += 3;
+											saved += 2;
+											break;
+					case FUSED + DIVIDE:    if (memory[second[pc]] == 0) {
+												accumulator = memory[arg];
+												fetchRegisters(pc + 1);
+												fatalError("*** attempt to divide by zero ***");
+											}
+											memory[third[pc]] = memory[arg] / memory[second[pc]];
+											acc = 0;
+											pc += 3;
+											saved += 2;
+											break;
+					case FUSED + REMAINDER: if (memory[second[pc]] == 0) {
+												accumulator = memory[arg];
+												fetchRegisters(pc + 1);
+												fatalError("*** attempt to divide by zero ***");
+											}
+											memory[third[pc]] = memory[arg] % memory[second[pc]];
+											acc = 0;
+											pc += 3;
+											saved += 2;
+											break;
+					case FUSED + BRANCHNEG: acc = memory[arg] - memory[second[pc]];
+											if (acc > maxWord || acc < minWord) {
+												accumulator = acc;
+												decodedFault(pc + 2);
+											}
+											pc = (acc < 0) ? third[pc] : pc + 3;
+											saved += 2;
+											break;
+					case FUSED + BRANCHZERO: acc = memory[arg] - memory[second[pc]];
+											if (acc > maxWord || acc < minWord) {
+												accumulator = acc;
+												decodedFault(pc + 2);
+											}
+											pc = (acc == 0) ? third[pc] : pc + 3;
+											saved += 2;
+											break;
+					case FUSED + STORE:     memory[second[pc]] = memory[arg];
+											acc = 0;
+											pc += 2;
+											saved += 1;
+											break;
+					case READ:        accumulator = acc;
+									  fetchRegisters(pc);
+									  printString("Enter an integer: ");
+									  int n = readInput();
+									  storeWord(arg, n);
+									  output.echoWord(n);
+									  pc++;
+									  break;
+					case WRITE:       output.printWord(memory[arg]);
+									  pc++;
+									  break;
+					case NEWLINE:     printString("\n");
+									  pc++;
+									  break;
+					case LOAD:        acc = memory[arg];
+									  pc++;
+									  break;
+					case STORE:       memory[arg] = acc;
+									  acc = 0;
+									  pc++;
+									  break;
+					case ADD:         acc += memory[arg];
+									  if (acc > maxWord || acc < minWord) {
+										  accumulator = acc;
+										  decodedFault(pc + 1);
+									  }
+									  pc++;
+									  break;
+					case SUBTRACT:    acc -= memory[arg];
+									  if (acc > maxWord || acc < minWord) {
+										  accumulator = acc;
+										  decodedFault(pc + 1);
+									  }
+									  pc++;
+									  break;
+					case DIVIDE:      if (memory[arg] == 0) {
+										  accumulator = acc;
+										  fetchRegisters(pc);
+										  fatalError("*** attempt to divide by zero ***");
+									  }
+									  acc /= memory[arg];
+									  pc++;
+									  break;
+					case MULTIPLY:    acc *= memory[arg];
+									  if (acc > maxWord || acc < minWord) {
+										  accumulator = acc;
+										  decodedFault(pc + 1);
+									  }
+									  pc++;
+									  break;
+					case REMAINDER:   if (memory[arg] == 0) {
+										  accumulator = acc;
+										  fetchRegisters(pc);
+										  fatalError("*** attempt to divide by zero ***");
+									  }
+									  acc %= memory[arg];
+									  pc++;
+									  break;
+					case POWER:       acc = (int)Math.pow(acc, memory[arg]);
+									  if (acc > maxWord || acc < minWord) {
+										  accumulator = acc;
+										  decodedFault(pc + 1);
+									  }
+									  pc++;
+									  break;
+					case BRANCH:      pc = arg;
+									  break;
+					case BRANCHNEG:   if (acc < 0)
+										  pc = arg;
+									  else
+										  pc++;
+									  break;
+					case BRANCHZERO:  if (acc == 0)
+										  pc = arg;
+									  else
+										  pc++;
+									  break;
+					default:          accumulator = acc; //HALT, the verifier allows no other operation codes
+									  fetchRegisters(pc);
+									  printString("*** Simpletron execution terminated ***\n");
+									  output.close();
+									  return;
+				}
 			}
-			printString("\n");
+		} catch (SimpletronException e) {
+			dispatched += instructionCounter - pc - 1; //the words of this dispatch before the one that failed
+			throw e;
+		} finally {
+			dispatchesSaved += saved;
+			instructionsExecuted += dispatched + saved; //a superinstruction is the words it replaces
 		}
-		writer.close();
 	}
 
-	//post: returns word in +wxyz or -wxyz format
-	private String formatWord(int word) {
-		String s = Math.abs(word) + "";
-		while (s.length() < ((MAX_WORD_SIZE+"").length()))
-			s = "0" + s;
-		if (word >= 0)
-			s = "+" + s;
-		else
-			s = "-" + s;
+	//one word of a compiled block, returns the accumulator after the word has run
+	private interface BlockStep {
+		int run(int acc);
+	}
+
+	//the branch that ends a compiled block, returns the address execution continues at
+	private interface BlockExit {
+		int next(int acc);
+	}
+
+	//a run of words compiled by the TIERED mode. Each word is a closure bound to its operand,
+	//so running the block never goes through the dispatch switch
+	private static class CompiledBlock {
+		int start;           //address of the first word
+		int end;             //address of the last word, including the exit
+		BlockStep[] steps;   //one for every word from start up to the exit
+		BlockExit exit;      //null if the block ends before a word it can't compile, like HALT
+		boolean invalid;     //set when a word of the block is written
+	}
+
+	//runs the loaded program like executeDecoded, but counts how often each branch target is reached.
+	//Once a target is hot the block starting there is compiled into closures and run through
+	//runCompiled. Writing into a compiled block throws it away, and it is compiled again if it gets hot again
+	private void executeTiered() {
+		decodeProgram();
+		hotness       = new int[memorySize + 1];
+		compileCounts = new int[memorySize + 1];
+		blocks        = new CompiledBlock[memorySize + 1];
+		blockCover    = new int[memorySize + 1];
+		liveBlocks    = new ArrayList<>();
+		deoptimizations = 0;
 
-		return s;
+		final int[] memory   = writableMemory();
+		final int[] opcodes  = this.opcodes;
+		final int[] operands = this.operands;
+		final int maxWord    = this.maxWord;
+		final int minWord    = this.minWord;
+		int acc = accumulator;
+		int pc  = instructionCounter;
+
+		long executed = 0; //instructions run, added to instructionsExecuted however the loop ends
+		boolean compiled = false; //true while runCompiled runs
+		try {
+			while (true) {
+				executed++;
+				int arg = operands[pc];
+				switch (opcodes[pc]) {
+					case READ:        accumulator = acc;
+									  fetchRegisters(pc);
+									  printString("Enter an integer: ");
+									  int n = readInput();
+									  storeWord(arg, n);
+									  wordWritten(arg);
+									  output.echoWord(n);
+									  pc++;
+									  break;
+					case WRITE:       output.printWord(memory[arg]);
+									  pc++;
+									  break;
+					case NEWLINE:     printString("\n");
+									  pc++;
+									  break;
+					case LOAD:        acc = memory[arg];
+									  pc++;
+									  break;
+					case STORE:       memory[arg] = acc;
+									  wordWritten(arg);
+									  acc = 0;
+									  pc++;
+									  break;
+					case ADD:         acc += memory[arg];
+									  if (acc > maxWord || acc < minWord) {
+										  accumulator = acc;
+										  decodedFault(pc + 1);
+									  }
+									  pc++;
+									  break;
+					case SUBTRACT:    acc -= memory[arg];
+									  if (acc > maxWord || acc < minWord) {
+										  accumulator = acc;
+										  decodedFault(pc + 1);
+									  }
+									  pc++;
+									  break;
+					case DIVIDE:      if (memory[arg] == 0) {
+										  accumulator = acc;
+										  fetchRegisters(pc);
+										  fatalError("*** attempt to divide by zero ***");
+									  }
+									  acc /= memory[arg];
+									  pc++;
+									  break;
+					case MULTIPLY:    acc *= memory[arg];
+									  if (acc > maxWord || acc < minWord) {
+										  accumulator = acc;
+										  decodedFault(pc + 1);
+									  }
+									  pc++;
+									  break;
+					case REMAINDER:   if (memory[arg] == 0) {
+										  accumulator = acc;
+										  fetchRegisters(pc);
+										  fatalError("*** attempt to divide by zero ***");
+									  }
+									  acc %= memory[arg];
+									  pc++;
+									  break;
+					case POWER:       acc = (int)Math.pow(acc, memory[arg]);
+									  if (acc > maxWord || acc < minWord) {
+										  accumulator = acc;
+										  decodedFault(pc + 1);
+									  }
+									  pc++;
+									  break;
+					case BRANCH:      accumulator = acc;
+									  compiled = true;
+									  pc = runCompiled(arg);
+									  compiled = false;
+									  acc = accumulator;
+									  break;
+					case BRANCHNEG:   if (acc < 0) {
+										  accumulator = acc;
+										  compiled = true;
+										  pc = runCompiled(arg);
+										  compiled = false;
+										  acc = accumulator;
+									  } else {
+										  pc++;
+									  }
+									  break;
+					case BRANCHZERO:  if (acc == 0) {
+										  accumulator = acc;
+										  compiled = true;
+										  pc = runCompiled(arg);
+										  compiled = false;
+										  acc = accumulator;
+									  } else {
+										  pc++;
+									  }
+									  break;
+					case HALT:        accumulator = acc;
+									  fetchRegisters(pc);
+									  printString("*** Simpletron execution terminated ***\n");
+									  output.close();
+									  return;
+					case UNDECODED:   decodeWord(pc); //the word was written since it was decoded
+									  executed--;   //and is dispatched again
+									  break;
+					default:		  accumulator = acc;
+									  decodedFault(pc);
+				}
+			}
+		} catch (SimpletronException e) {
+			if (!compiled) //compiled blocks count their own words
+				executed += instructionCounter - pc - 1;
+			throw e;
+		} finally {
+			instructionsExecuted += executed;
+		}
 	}
 
-    //post: returns a two digit string with preceding 0's if necessary
-	private String formatCode(int code, int length) {
-		String s = code + "";
-		while (s.length() < length)
-			s = "0" + s;
-		return s;
+	//pre:  a branch to target was taken, the accumulator is in accumulator
+	//post: counts target as reached and runs compiled blocks for as long as branches lead from one to
+	//      another. Returns the address the interpreter continues at, with the accumulator in accumulator
+	private int runCompiled(int target) {
+		int pc = target;
+		while (true) {
+			CompiledBlock block = blocks[pc];
+			if (block == null) {
+				if (++hotness[pc] < tierThreshold || compileCounts[pc] >= maxCompiles)
+					return pc;
+				block = compileBlock(pc);
+				if (block == null)
+					return pc;
+			}
+
+			int acc = accumulator;
+			BlockStep[] steps = block.steps;
+			try {
+				for (int i = 0; i < steps.length; i++) {
+					acc = steps[i].run(acc);
+					if (block.invalid) { //the block wrote into itself, the interpreter runs the rest
+						accumulator = acc;
+						instructionsExecuted += i + 1;
+						return block.start + i + 1;
+					}
+				}
+			} catch (SimpletronException e) {
+				instructionsExecuted += instructionCounter - block.start; //the words before the one that failed
+				throw e;
+			}
+			accumulator = acc;
+			if (block.exit == null) {
+				instructionsExecuted += steps.length;
+				return block.start + steps.length;
+			}
+
+			instructionsExecuted += steps.length + 1; //and the branch that ends it
+			pc = block.exit.next(acc);
+			if (pc == block.end + 1) //branch not taken
+				return pc;
+		}
 	}
 
+	//post: the words from start up to and including the first branch are compiled into a block,
+	//      returns null if there is nothing to compile
+	private CompiledBlock compileBlock(int start) {
+		ArrayList<BlockStep> steps = new ArrayList<>();
+		CompiledBlock block = new CompiledBlock();
+		block.start = start;
+
+		int address = start;
+		for (; address < memorySize; address++) {
+			if (opcodes[address] == UNDECODED)
+				decodeWord(address);
+			int code = opcodes[address];
+			if (code == BRANCH || code == BRANCHNEG || code == BRANCHZERO) {
+				block.exit = compileExit(code, operands[address], address);
+				break;
+			}
+			BlockStep step = compileStep(code, operands[address], address);
+			if (step == null)
+				break;
+			steps.add(step);
+		}
+		if (steps.isEmpty() && block.exit == null)
+			return null;
+
+		block.steps = steps.toArray(new BlockStep[0]);
+		block.end = (block.exit == null) ? address - 1 : address;
+		for (int i = block.start; i <= block.end; i++)
+			blockCover[i]++;
+		blocks[start] = block;
+		liveBlocks.add(block);
+		compileCounts[start]++;
+		hotness[start] = 0;
+		return block;
+	}
+
+	//post: returns the closure for one word, null for HALT and words the interpreter must report
+	private BlockStep compileStep(int code, final int arg, final int address) {
+		switch (code) {
+			case READ:      return acc -> { accumulator = acc;
+											fetchRegisters(address);
+											printString("Enter an integer: ");
+											int n = readInput();
+											storeWord(arg, n);
+											wordWritten(arg);
+											output.echoWord(n);
+											return acc; };
+			case WRITE:     return acc -> { output.printWord(memory[arg]); return acc; };
+			case NEWLINE:   return acc -> { printString("\n"); return acc; };
+			case LOAD:      return acc -> memory[arg];
+			case STORE:     return acc -> { memory[arg] = acc; wordWritten(arg); return 0; };
+			case ADD:       return acc -> checkedResult(acc + memory[arg], address + 1);
+			case SUBTRACT:  return acc -> checkedResult(acc - memory[arg], address + 1);
+			case MULTIPLY:  return acc -> checkedResult(acc * memory[arg], address + 1);
+			case POWER:     return acc -> checkedResult((int)Math.pow(acc, memory[arg]), address + 1);
+			case DIVIDE:    return acc -> { checkDivisor(arg, address, acc); return acc / memory[arg]; };
+			case REMAINDER: return acc -> { checkDivisor(arg, address, acc); return acc % memory[arg]; };
+			default:        return null;
+		}
+	}
+
+	private BlockExit compileExit(int code, final int target, final int address) {
+		switch (code) {
+			case BRANCH:    return acc -> target;
+			case BRANCHNEG: return acc -> (acc < 0) ? target : address + 1;
+			default:        return acc -> (acc == 0) ? target : address + 1;
+		}
+	}
+
+	//post: returns acc, or reports overflow at next if acc is out of range
+	private int checkedResult(int acc, int next) {
+		if (acc > maxWord || acc < minWord) {
+			accumulator = acc;
+			decodedFault(next);
+		}
+		return acc;
+	}
+
+	private void checkDivisor(int arg, int address, int acc) {
+		if (memory[arg] == 0) {
+			accumulator = acc;
+			fetchRegisters(address);
+			fatalError("*** attempt to divide by zero ***");
+		}
+	}
+
+	//post: the decoded entry of address is marked, and every compiled block containing it is thrown away
+	private void wordWritten(int address) {
+		opcodes[address] = UNDECODED;
+		if (blockCover[address] == 0)
+			return;
+
+		for (int i = liveBlocks.size() - 1; i >= 0; i--) {
+			CompiledBlock block = liveBlocks.get(i);
+			if (address < block.start || address > block.end)
+				continue;
+			block.invalid = true;
+			blocks[block.start] = null;
+			for (int n = block.start; n <= block.end; n++)
+				blockCover[n]--;
+			liveBlocks.remove(i);
+			deoptimizations++;
+		}
+	}
+
+	//post: runs the program as JVM bytecode and returns true, or returns false without running anything
+	//      when BytecodeTranslator refuses the program, so it can be run by one of the loops instead
+	private boolean executeTranslated() {
+		//the translated program always starts at the first word with the accumulator 0, and has the
+		//standard format built in. A restored or sliced machine may be at the first word with another
+		//accumulator, which the translated program would lose
+		if (instructionCounter != 0 || accumulator != 0 || !format.isStandard())
+			return false;
+		MethodHandle program;
+		if (image != null && memory == image.words()) {
+			program = image.translated(); //nothing has been stored since the image was loaded
+		} else {
+			BytecodeTranslator translator = new BytecodeTranslator(memory);
+			program = translator.translate() ? translator.getProgram() : null;
+		}
+		if (program == null)
+			return false;
+
+		try {
+			program.invokeExact(this, writableMemory());
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+		return true;
+	}
+
+	//the methods below are called by code generated by BytecodeTranslator. address is the word
+	//being executed and acc is the accumulator the generated code keeps in a local variable
+
+	//unrun is the number of words from address to the end of its run, which were counted when the run
+	//was entered. A hook that fails takes them off the count, as they never ran
+
+	void compiledRead(int address, int acc, int unrun) {
+		accumulator = acc;
+		fetchRegisters(address);
+		printString("Enter an integer: ");
+		try {
+			int n = readInput();
+			storeWord(operand, n);
+			output.echoWord(n);
+		} catch (SimpletronException e) {
+			instructionsExecuted -= unrun;
+			throw e;
+		}
+	}
+
+	void compiledWrite(int word) {
+		output.printWord(word);
+	}
+
+	void compiledNewline() {
+		printString("\n");
+	}
+
+	void compiledHalt(int address, int acc) {
+		accumulator = acc;
+		fetchRegisters(address);
+		printString("*** Simpletron execution terminated ***\n");
+		output.close();
+	}
+
+	void compiledOverflow(int address, int acc, int unrun) {
+		accumulator = acc;
+		instructionsExecuted -= unrun;
+		decodedFault(address);
+	}
+
+	void compiledDivideByZero(int address, int acc, int unrun) {
+		accumulator = acc;
+		instructionsExecuted -= unrun;
+		fetchRegisters(address);
+		fatalError("*** attempt to divide by zero ***");
+	}
+
+	private void printString(String string) {
+		output.print(string);
+	}
+
+
+	//post: all of the variables are printed to the screen
+	private void dumpMemory() {
+		printString(snapshot().dump());
+		output.close();
+	}
+
+	//post: the error and the memory dump are printed, and a SimpletronException is thrown
 	private void fatalError(String errorMessage) {
-		System.out.println(errorMessage);
-		System.out.println("*** Simpletron execution abnormally terminated ***");
-		if (writer != null) {
-			writer.println(errorMessage);
-			writer.println("*** Simpletron execution abnormally terminated ***");
+		SimpletronEvents.fatalError(errorMessage, accumulator, instructionCounter, instructionRegister, operationCode, operand);
+		if (output == null) { //the program failed to load, there is no output to dump memory to
+			System.out.println(errorMessage);
+			System.out.println("*** Simpletron execution abnormally terminated ***");
+		} else {
+			printString(errorMessage + "\n");
+			printString("*** Simpletron execution abnormally terminated ***\n");
 			dumpMemory();
 		}
-		System.exit(-1);
+		throw new SimpletronException(errorMessage);
 	}
 
 
 	public static void main(String [] args) {
 		Simpletron test = new Simpletron("test.txt");
-		test.loadProgram();
-		test.executeProgram();
+		try {
+			test.loadProgram();
+			test.executeProgram();
+		} catch (SimpletronException e) {
+			System.exit(-1);
+		}
 		
 		
 		
@@ -0,0 +1,188 @@
+/**************************************************************************
+* JDK Flight Recorder events of the Simpletron runtime. Nothing is        *
+* recorded per instruction: a program gets a load, a start, and an end    *
+* event, and events for each READ that waits for input and for a fatal    *
+* error.                                                                  *
+*                                                                         *
+* Loading the first event class makes the JVM set up Flight Recorder,     *
+* which takes most of a second, so until a recording has been started     *
+* the methods below return without touching the event classes. After     *
+* that an event that is off costs a check of a flag.                      *
+*                                                                         *
+* usage: java -XX:StartFlightRecording:filename=run.jfr Simpletron        *
+**************************************************************************/
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+public class SimpletronEvents {
+	private SimpletronEvents() {
+	}
+
+	//post: returns true once a recording has been started in this JVM, by a command line flag or jcmd
+	static boolean isRecording() {
+		return FlightRecorder.isInitialized();
+	}
+
+	//post: returns a started load event, null if there is no recording
+	static ProgramLoad beginLoad() {
+		if (!isRecording())
+			return null;
+		ProgramLoad event = new ProgramLoad();
+		event.begin();
+		return event;
+	}
+
+	static void endLoad(ProgramLoad event, String source, int memorySize, boolean verified, String verificationError) {
+		if (event != null && event.shouldCommit()) {
+			event.source = source;
+			event.memorySize = memorySize;
+			event.verified = verified;
+			event.verificationError = verificationError;
+			event.commit();
+		}
+	}
+
+	//post: records the start of an execution and returns a started end event, null if there is no recording
+	static ExecutionEnd beginExecution(String mode, int memorySize) {
+		if (!isRecording())
+			return null;
+		ExecutionStart start = new ExecutionStart();
+		if (start.shouldCommit()) {
+			start.mode = mode;
+			start.memorySize = memorySize;
+			start.commit();
+		}
+		ExecutionEnd event = new ExecutionEnd();
+		event.begin();
+		return event;
+	}
+
+	static void endExecution(ExecutionEnd event, String mode, boolean halted, long instructions) {
+		if (event != null && event.shouldCommit()) {
+			event.mode = mode;
+			event.halted = halted;
+			event.instructions = instructions;
+			event.commit();
+		}
+	}
+
+	//post: returns a started read wait event, null if there is no recording
+	static ReadWait beginReadWait() {
+		if (!isRecording())
+			return null;
+		ReadWait event = new ReadWait();
+		event.begin();
+		return event;
+	}
+
+	static void endReadWait(ReadWait event, int address) {
+		if (event != null && event.shouldCommit()) {
+			event.address = address;
+			event.commit();
+		}
+	}
+
+	static void fatalError(String message, int accumulator, int instructionCounter, int instructionRegister,
+			int operationCode, int operand) {
+		if (!isRecording())
+			return;
+		FatalError event = new FatalError();
+		if (event.shouldCommit()) {
+			event.message = message;
+			event.accumulator = accumulator;
+			event.instructionCounter = instructionCounter;
+			event.instructionRegister = instructionRegister;
+			event.operationCode = operationCode;
+			event.operand = operand;
+			event.commit();
+		}
+	}
+
+	@Name("simpletron.ProgramLoad")
+	@Label("Program Load")
+	@Category("Simpletron")
+	@Description("A program was loaded into a Simpletron")
+	@StackTrace(false)
+	static class ProgramLoad extends Event {
+		@Label("Source")
+		String source;           //file name, or "image" or "array" for programs loaded from memory
+
+		@Label("Memory Size")
+		int memorySize;
+
+		@Label("Verified")
+		boolean verified;
+
+		@Label("Verification Error")
+		String verificationError;
+	}
+
+	@Name("simpletron.ExecutionStart")
+	@Label("Execution Start")
+	@Category("Simpletron")
+	@StackTrace(false)
+	static class ExecutionStart extends Event {
+		@Label("Execution Mode")
+		String mode;
+
+		@Label("Memory Size")
+		int memorySize;
+	}
+
+	@Name("simpletron.ExecutionEnd")
+	@Label("Execution End")
+	@Category("Simpletron")
+	@Description("A program halted or failed, the duration is the time since its execution started")
+	@StackTrace(false)
+	static class ExecutionEnd extends Event {
+		@Label("Execution Mode")
+		String mode;
+
+		@Label("Halted")
+		@Description("False if the program failed with a fatal error")
+		boolean halted;
+
+		@Label("Instructions")
+		@Description("Instructions the run executed")
+		long instructions;
+	}
+
+	@Name("simpletron.ReadWait")
+	@Label("Read Wait")
+	@Category("Simpletron")
+	@Description("A READ waiting for its input")
+	@StackTrace(false)
+	static class ReadWait extends Event {
+		@Label("Address")
+		int address;
+	}
+
+	@Name("simpletron.FatalError")
+	@Label("Fatal Error")
+	@Category("Simpletron")
+	@Description("A program was stopped by a fatal error, with the registers of its memory dump")
+	static class FatalError extends Event {
+		@Label("Message")
+		String message;
+
+		@Label("Accumulator")
+		int accumulator;
+
+		@Label("Instruction Counter")
+		int instructionCounter;
+
+		@Label("Instruction Register")
+		int instructionRegister;
+
+		@Label("Operation Code")
+		int operationCode;
+
+		@Label("Operand")
+		int operand;
+	}
+}
@@ -0,0 +1,12 @@
+/**************************************************************************
+* Thrown when a Simpletron stops a program with a fatal error. By the     *
+* time it is thrown the error message and the memory dump have already    *
+* been printed to the Simpletron's output.                                *
+**************************************************************************/
+public class SimpletronException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	public SimpletronException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,153 @@
+/**************************************************************************
+* This class runs many Simpletron programs concurrently. Each run gets    *
+* its own Simpletron with an ArrayInput and a StringOutput, so runs share *
+* nothing. Runs are executed on virtual threads when the JVM has them,    *
+* and on a pool with one thread per core otherwise.                       *
+*                                                                         *
+* usage: java SimpletronExecutor [program.txt] [runs] [input]             *
+* runs a throughput benchmark over an increasing number of threads        *
+**************************************************************************/
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class SimpletronExecutor {
+	//sums 1..n for an n it reads, used when the benchmark is not given a program
+	private static final int[] SUM_PROGRAM = {
+		10090, 20090, 42009, 30091, 21091, 20090, 31092, 21090, 40001, 11091, 43000
+	};
+
+	private ExecutorService executor;
+	private Simpletron.ExecutionMode executionMode;
+
+	//the outcome of one run
+	public static class Result {
+		private String transcript;
+		private String error;
+
+		Result(String transcript, String error) {
+			this.transcript = transcript;
+			this.error = error;
+		}
+
+		public String getTranscript() {
+			return transcript;
+		}
+
+		//post: returns the fatal error that stopped the run, null if it halted
+		public String getError() {
+			return error;
+		}
+	}
+
+	//post: an executor that runs every program on its own virtual thread, or on one thread per core
+	//      if the JVM has no virtual threads
+	public SimpletronExecutor() {
+		this(newDefaultExecutor());
+	}
+
+	public SimpletronExecutor(ExecutorService executor) {
+		SimpletronMetrics.register();
+		this.executor = executor;
+		executionMode = Simpletron.ExecutionMode.INTERPRETED;
+	}
+
+	public void setExecutionMode(Simpletron.ExecutionMode executionMode) {
+		this.executionMode = executionMode;
+	}
+
+	//post: returns the executor the JVM offers for virtual threads, a pool with a thread per core otherwise
+	private static ExecutorService newDefaultExecutor() {
+		try {
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		}
+	}
+
+	//post: the program is scheduled to run with input, the image is not changed
+	public Future<Result> submit(int[] image, int... input) {
+		return submit(new ProgramImage(image), input);
+	}
+
+	public Future<Result> submit(final ProgramImage image, final int... input) {
+		return executor.submit(() -> run(image, input));
+	}
+
+	//post: runs the program once for every input and returns the results in the same order
+	public List<Result> runAll(int[] image, List<int[]> inputs) throws InterruptedException {
+		return runAll(new ProgramImage(image), inputs);
+	}
+
+	//post: runs the program once for every input and returns the results in the same order, every run
+	//      shares the image
+	public List<Result> runAll(ProgramImage image, List<int[]> inputs) throws InterruptedException {
+		List<Future<Result>> futures = new ArrayList<>();
+		for (int[] input : inputs)
+			futures.add(submit(image, input));
+
+		List<Result> results = new ArrayList<>();
+		for (Future<Result> future : futures) {
+			try {
+				results.add(future.get());
+			} catch (ExecutionException e) {
+				results.add(new Result("", String.valueOf(e.getCause())));
+			}
+		}
+		return results;
+	}
+
+	private Result run(ProgramImage image, int[] input) {
+		StringOutput output = new StringOutput();
+		Simpletron simpletron = new Simpletron(new ArrayInput(input), output);
+		simpletron.setExecutionMode(executionMode);
+		try {
+			simpletron.loadProgram(image);
+			simpletron.executeProgram();
+			return new Result(output.getTranscript(), null);
+		} catch (SimpletronException e) {
+			return new Result(output.getTranscript(), e.getMessage());
+		}
+	}
+
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	//post: returns the number of programs per second executor ran
+	private static double measure(ExecutorService executor, ProgramImage image, List<int[]> inputs) throws InterruptedException {
+		SimpletronExecutor runner = new SimpletronExecutor(executor);
+		long start = System.nanoTime();
+		runner.runAll(image, inputs);
+		long nanos = System.nanoTime() - start;
+		runner.shutdown();
+		return inputs.size() / (nanos / 1e9);
+	}
+
+	public static void main(String [] args) throws IOException, InterruptedException {
+		ProgramImage image = (args.length > 0) ? ProgramImage.load(args[0]) : new ProgramImage(SUM_PROGRAM);
+		int runs = (args.length > 1) ? Integer.parseInt(args[1]) : 20000;
+		int value = (args.length > 2) ? Integer.parseInt(args[2]) : 400;
+
+		List<int[]> inputs = new ArrayList<>();
+		for (int i = 0; i < runs; i++)
+			inputs.add(new int[] {value});
+
+		int cores = Runtime.getRuntime().availableProcessors();
+		measure(newDefaultExecutor(), image, inputs); //warm up
+
+		double single = 0;
+		for (int threads = 1; threads <= cores; threads *= 2) {
+			double throughput = measure(Executors.newFixedThreadPool(threads), image, inputs);
+			if (threads == 1)
+				single = throughput;
+			System.out.printf("%3d threads %12.0f programs/s  %5.2fx%n", threads, throughput, throughput / single);
+		}
+		double throughput = measure(newDefaultExecutor(), image, inputs);
+		System.out.printf("default     %12.0f programs/s  %5.2fx%n", throughput, throughput / single);
+	}
+}
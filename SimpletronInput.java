@@ -0,0 +1,18 @@
+/**************************************************************************
+* Source of the integers a Simpletron's READ instructions take.           *
+**************************************************************************/
+public interface SimpletronInput {
+	//post: returns the next integer, throws NoSuchElementException if there is none
+	int nextInt();
+
+	//post: returns true if nextInt() can return without waiting for a value. A Simpletron run in
+	//      slices gives up its slice at a READ that isn't ready, instead of blocking its thread
+	default boolean ready() {
+		return true;
+	}
+
+	//post: returns true if a user types the values as they are read, so prompts must be shown first
+	default boolean isInteractive() {
+		return false;
+	}
+}
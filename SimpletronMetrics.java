@@ -0,0 +1,111 @@
+/**************************************************************************
+* Counters shared by every Simpletron in the JVM. Each run or slice       *
+* updates them once, when it starts and when it ends, and each READ adds  *
+* the time it waited, so they cost nothing per instruction.               *
+*                                                                         *
+* Starting the platform MBean server takes most of a second, too long for *
+* a single program run from the command line, so the counters are only    *
+* registered by the long running hosts, SimpletronScheduler and           *
+* SimpletronExecutor, or when -Dsimpletron.jmx=true is given.             *
+*                                                                         *
+* Every loop counts the instructions it runs in a local variable and adds *
+* them to its Simpletron's count when it stops, fused, tiered, and        *
+* translated code count a whole run of straight line code at a time.      *
+**************************************************************************/
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public class SimpletronMetrics implements SimpletronMetricsMBean {
+	public static final String OBJECT_NAME = "Simpletron:type=Metrics";
+
+	static final SimpletronMetrics METRICS = new SimpletronMetrics();
+	private static boolean registered;
+
+	private final LongAdder instructions = new LongAdder();
+	private final LongAdder halts        = new LongAdder();
+	private final LongAdder abnormal     = new LongAdder();
+	private final LongAdder ioWaitNanos  = new LongAdder();
+	private final AtomicInteger active   = new AtomicInteger();
+
+	//last sample of getInstructionsPerSecond
+	private long sampleNanos = System.nanoTime();
+	private long sampleInstructions;
+
+	static {
+		if (Boolean.getBoolean("simpletron.jmx"))
+			register();
+	}
+
+	private SimpletronMetrics() {
+	}
+
+	//post: the counters are registered under OBJECT_NAME, if they weren't already. They are left
+	//      unregistered if the name is taken, by a copy of this class from another class loader for example
+	public static synchronized void register() {
+		if (registered)
+			return;
+		registered = true;
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(METRICS, new ObjectName(OBJECT_NAME));
+		} catch (JMException e) {
+			//the counters still work, they are just not visible through JMX
+		}
+	}
+
+	void started() {
+		active.incrementAndGet();
+	}
+
+	//post: a run or slice has ended, halted or failed with a fatal error or neither, a slice that yields.
+	//      instructions is how many it counted
+	void finished(boolean halted, boolean failed, long instructions) {
+		active.decrementAndGet();
+		this.instructions.add(instructions);
+		if (halted)
+			halts.increment();
+		if (failed)
+			abnormal.increment();
+	}
+
+	void ioWait(long nanos) {
+		ioWaitNanos.add(nanos);
+	}
+
+	@Override
+	public synchronized double getInstructionsPerSecond() {
+		long now = System.nanoTime();
+		long count = instructions.sum();
+		double rate = (now == sampleNanos) ? 0 : (count - sampleInstructions) * 1e9 / (now - sampleNanos);
+		sampleNanos = now;
+		sampleInstructions = count;
+		return rate;
+	}
+
+	@Override
+	public long getInstructionsExecuted() {
+		return instructions.sum();
+	}
+
+	@Override
+	public int getActiveInstances() {
+		return active.get();
+	}
+
+	@Override
+	public long getHalts() {
+		return halts.sum();
+	}
+
+	@Override
+	public long getAbnormalTerminations() {
+		return abnormal.sum();
+	}
+
+	@Override
+	public long getIoWaitMillis() {
+		return ioWaitNanos.sum() / 1000000;
+	}
+}
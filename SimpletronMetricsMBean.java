@@ -0,0 +1,19 @@
+/**************************************************************************
+* The JMX view of SimpletronMetrics, registered as Simpletron:type=Metrics *
+**************************************************************************/
+public interface SimpletronMetricsMBean {
+	//post: returns the instructions counted per second since the last call, or since startup
+	double getInstructionsPerSecond();
+
+	long getInstructionsExecuted();
+
+	//post: returns the number of Simpletrons running a program or a slice right now
+	int getActiveInstances();
+
+	long getHalts();
+
+	long getAbnormalTerminations();
+
+	//post: returns the milliseconds READs have spent waiting for input
+	long getIoWaitMillis();
+}
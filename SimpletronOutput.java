@@ -0,0 +1,28 @@
+/**************************************************************************
+* Destination of everything a Simpletron prints. Text passed to print is  *
+* shown to the user and kept in the transcript. Text passed to echo is    *
+* only kept in the transcript, it records the integers a READ took, which *
+* the user has already seen while typing them.                            *
+**************************************************************************/
+public interface SimpletronOutput {
+	void print(String string);
+
+	void echo(String string);
+
+	//post: word is printed on a line of its own
+	default void printWord(int word) {
+		print(word + "\n");
+	}
+
+	//post: word is echoed on a line of its own
+	default void echoWord(int word) {
+		echo(word + "\n");
+	}
+
+	//post: everything printed so far has been shown to the user
+	default void flush() {
+	}
+
+	//post: the program has halted or failed, everything printed has been written out
+	void close();
+}
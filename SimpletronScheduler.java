@@ -0,0 +1,316 @@
+/**************************************************************************
+* This class runs many Simpletron programs on a small, fixed pool of      *
+* carrier threads. Each program is a context that runs for a quantum of   *
+* instructions and then goes to the back of the run queue, so a program   *
+* that loops forever can't keep the others from running. A context whose  *
+* READ finds no input is parked, without holding a carrier, until input   *
+* is offered to it.                                                       *
+*                                                                         *
+* Every context has a hard budget of instructions and of wall clock time. *
+* A context that exceeds either one is killed.                            *
+**************************************************************************/
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SimpletronScheduler {
+	private static final long SWEEP_MILLIS = 10; //how often carriers look for expired parked contexts
+
+	//states of a context
+	public enum State {
+		RUNNABLE,    //waiting in the run queue or running on a carrier
+		PARKED,      //waiting for input
+		HALTED,
+		FAILED,      //stopped by a fatal error
+		KILLED       //stopped for exceeding its budget
+	}
+
+	private int quantum;                  //instructions a context runs before it yields
+	private long instructionBudget;       //instructions a context may run in total
+	private long wallClockBudget;         //nanoseconds a context may exist before it is killed
+	private LinkedBlockingQueue<Context> runQueue;
+	private List<Context> contexts;
+	private List<Thread> carriers;
+	private volatile boolean shutdown;
+	private AtomicLong nextSweep;         //System.nanoTime() after which the next carrier looks for expired parked contexts
+
+	private AtomicLong budgetKills;
+	private AtomicLong halts;
+	private AtomicLong failures;
+
+	//one program run by the scheduler
+	public class Context {
+		private Simpletron simpletron;
+		private SimpletronOutput output;
+		private QueueInput input;
+		private volatile State state;
+		private long started;             //System.nanoTime() when the context was submitted
+		private String error;             //why the context failed or was killed
+		private CountDownLatch finished;
+
+		private Context(ProgramImage image, SimpletronOutput output) {
+			this.output = output;
+			input = new QueueInput();
+			simpletron = new Simpletron(input, output);
+			simpletron.loadProgram(image);
+			state = State.RUNNABLE;
+			started = System.nanoTime();
+			finished = new CountDownLatch(1);
+		}
+
+		//post: value is added to the input of the context, a context parked on READ is made runnable
+		public void offerInput(int value) {
+			synchronized (this) {
+				input.values.add(value);
+				if (state != State.PARKED)
+					return;
+				state = State.RUNNABLE;
+			}
+			runQueue.add(this);
+		}
+
+		public State getState() {
+			return state;
+		}
+
+		public long getInstructionsExecuted() {
+			return simpletron.getInstructionsExecuted();
+		}
+
+		//post: returns why the context failed or was killed, null if it is running or halted
+		public String getError() {
+			return error;
+		}
+
+		//post: waits until the context halts, fails, or is killed
+		public void await() throws InterruptedException {
+			finished.await();
+		}
+
+		private void finish(State state, String error) {
+			this.error = error;
+			this.state = state;
+			finished.countDown();
+		}
+	}
+
+	//input of a context, values are offered by other threads
+	private static class QueueInput implements SimpletronInput {
+		private ConcurrentLinkedQueue<Integer> values = new ConcurrentLinkedQueue<>();
+
+		@Override
+		public int nextInt() {
+			Integer value = values.poll();
+			if (value == null)
+				throw new java.util.NoSuchElementException();
+			return value;
+		}
+
+		@Override
+		public boolean ready() {
+			return !values.isEmpty();
+		}
+	}
+
+	//pre:  carrierCount > 0, quantum > 0
+	//post: a scheduler with carrierCount running carriers. A budget of 0 means no limit
+	public SimpletronScheduler(int carrierCount, int quantum, long instructionBudget, long wallClockBudgetMillis) {
+		SimpletronMetrics.register();
+		this.quantum = quantum;
+		this.instructionBudget = (instructionBudget == 0) ? Long.MAX_VALUE : instructionBudget;
+		this.wallClockBudget = (wallClockBudgetMillis == 0) ? Long.MAX_VALUE
+				: TimeUnit.MILLISECONDS.toNanos(wallClockBudgetMillis);
+		runQueue = new LinkedBlockingQueue<>();
+		contexts = new CopyOnWriteArrayList<>();
+		budgetKills = new AtomicLong();
+		halts = new AtomicLong();
+		failures = new AtomicLong();
+		nextSweep = new AtomicLong(System.nanoTime());
+
+		carriers = new ArrayList<>();
+		for (int i = 0; i < carrierCount; i++) {
+			Thread carrier = new Thread(this::carry, "simpletron-carrier-" + i);
+			carrier.setDaemon(true);
+			carriers.add(carrier);
+			carrier.start();
+		}
+	}
+
+	//post: a context running the program is added to the run queue, its output goes to output
+	public Context submit(int[] image, SimpletronOutput output) {
+		return submit(new ProgramImage(image), output);
+	}
+
+	//post: a context running the program is added to the run queue, the image is shared with other contexts
+	public Context submit(ProgramImage image, SimpletronOutput output) {
+		Context context = new Context(image, output);
+		contexts.add(context);
+		runQueue.add(context);
+		return context;
+	}
+
+	//post: returns the number of contexts waiting for a carrier
+	public int getQueueDepth() {
+		return runQueue.size();
+	}
+
+	//post: returns the number of contexts killed for exceeding a budget
+	public long getBudgetKills() {
+		return budgetKills.get();
+	}
+
+	public long getHalts() {
+		return halts.get();
+	}
+
+	public long getFailures() {
+		return failures.get();
+	}
+
+	//post: returns the contexts that have not halted, failed, or been killed
+	public List<Context> getLiveContexts() {
+		List<Context> live = new ArrayList<>();
+		for (Context context : contexts) {
+			State state = context.state;
+			if (state == State.RUNNABLE || state == State.PARKED)
+				live.add(context);
+		}
+		return live;
+	}
+
+	//post: the carriers stop after their current quantum, contexts that are still live stay as they are
+	public void shutdown() {
+		shutdown = true;
+		for (Thread carrier : carriers)
+			carrier.interrupt();
+	}
+
+	//the loop every carrier runs. Parked contexts are swept between quanta as well as when the carrier
+	//is idle, so a busy run queue can't keep an expired parked context alive
+	private void carry() {
+		while (!shutdown) {
+			Context context;
+			try {
+				context = runQueue.poll(SWEEP_MILLIS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				return;
+			}
+			if (context != null)
+				runQuantum(context);
+			if (sweepDue())
+				killExpiredParked();
+		}
+	}
+
+	//post: returns true at most once every SWEEP_MILLIS, to one carrier
+	private boolean sweepDue() {
+		long now = System.nanoTime();
+		long next = nextSweep.get();
+		return now - next >= 0
+				&& nextSweep.compareAndSet(next, now + TimeUnit.MILLISECONDS.toNanos(SWEEP_MILLIS));
+	}
+
+	//post: the context has run one quantum and is requeued, parked, or finished
+	private void runQuantum(Context context) {
+		if (overBudget(context))
+			return;
+
+		Simpletron.SliceResult result;
+		long budget = Math.min(quantum, instructionBudget - context.getInstructionsExecuted());
+		try {
+			result = context.simpletron.executeSlice(budget);
+		} catch (SimpletronException e) {
+			failures.incrementAndGet();
+			contexts.remove(context);
+			context.finish(State.FAILED, e.getMessage());
+			return;
+		} catch (RuntimeException e) { //a fault outside the program, the context must still finish so await returns
+			failures.incrementAndGet();
+			contexts.remove(context);
+			context.finish(State.FAILED, e.toString());
+			return;
+		}
+
+		switch (result) {
+			case HALTED:  halts.incrementAndGet();
+						  contexts.remove(context);
+						  context.finish(State.HALTED, null);
+						  break;
+			case BLOCKED: synchronized (context) {
+							  if (!context.input.ready()) { //input may have arrived since the READ looked
+								  context.state = State.PARKED;
+								  break;
+							  }
+						  }
+						  runQueue.add(context);
+						  break;
+			default:      if (!overBudget(context))
+							  runQueue.add(context);
+		}
+	}
+
+	//post: returns true and kills the context if it has used up a budget
+	private boolean overBudget(Context context) {
+		if (context.getInstructionsExecuted() >= instructionBudget) {
+			kill(context, "*** instruction budget exceeded ***");
+			return true;
+		}
+		if (System.nanoTime() - context.started > wallClockBudget) {
+			kill(context, "*** wall clock budget exceeded ***");
+			return true;
+		}
+		return false;
+	}
+
+	//post: parked contexts past their wall clock budget are killed
+	private void killExpiredParked() {
+		for (Context context : contexts) {
+			synchronized (context) {
+				if (context.state != State.PARKED || System.nanoTime() - context.started <= wallClockBudget)
+					continue;
+				context.state = State.RUNNABLE; //so offerInput doesn't queue it while it is killed
+			}
+			kill(context, "*** wall clock budget exceeded ***");
+		}
+	}
+
+	private void kill(Context context, String message) {
+		budgetKills.incrementAndGet();
+		contexts.remove(context);
+		context.output.print(message + "\n");
+		context.output.print("*** Simpletron execution killed ***\n");
+		context.output.close();
+		context.finish(State.KILLED, message);
+	}
+
+	//usage: java SimpletronScheduler program.txt contexts
+	//runs the program in many contexts on one carrier per core and prints the metrics
+	public static void main(String [] args) throws Exception {
+		ProgramImage image = ProgramImage.load(args[0]);
+		int count = (args.length > 1) ? Integer.parseInt(args[1]) : 1000;
+		SimpletronScheduler scheduler = new SimpletronScheduler(
+				Runtime.getRuntime().availableProcessors(), 1000, 10000000, 10000);
+
+		List<Context> submitted = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			Context context = scheduler.submit(image, new StringOutput());
+			for (int n = 0; n < 16; n++)
+				context.offerInput(i % 200);
+			submitted.add(context);
+		}
+
+		long instructions = 0;
+		for (Context context : submitted) {
+			context.await();
+			instructions += context.getInstructionsExecuted();
+		}
+		System.out.println("halts " + scheduler.getHalts() + ", failures " + scheduler.getFailures()
+				+ ", budget kills " + scheduler.getBudgetKills() + ", instructions " + instructions);
+		scheduler.shutdown();
+	}
+}
@@ -0,0 +1,273 @@
+/**************************************************************************
+* The whole state of a Simpletron: its memory and its registers. A        *
+* snapshot is never modified, so any number of Simpletrons can be         *
+* restored from one, each copies the memory the first time it stores a    *
+* word. Snapshots are saved in a binary format, all values big endian:    *
+*                                                                         *
+*   header   magic "SMLS", u16 version, u16 reserved, int memory size,    *
+*            int operand radix, int largest word                          *
+*   state    int accumulator, instruction counter, instruction register,  *
+*            operation code, operand, long instructions executed          *
+*   memory   every word, one int each                                     *
+*   checksum CRC32 of everything before it                                *
+*                                                                         *
+* The memory dump a Simpletron prints on a fatal error is a rendering of  *
+* a snapshot, see appendDump.                                             *
+*                                                                         *
+* usage: java Snapshot checkpoint.sms                                     *
+* prints the memory dump of a saved snapshot                              *
+**************************************************************************/
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+public class Snapshot {
+	public static final int MAGIC   = 0x534D4C53; //"SMLS"
+	public static final int VERSION = 1;
+
+	private static final int HEADER_SIZE   = 48;
+	private static final int CHECKSUM_SIZE = 4;
+
+	private final WordFormat format;
+	private final int[] memory;          //shared with the Simpletron it was taken from until that one stores a word
+	private final int accumulator;
+	private final int instructionCounter;
+	private final int instructionRegister;
+	private final int operationCode;
+	private final int operand;
+	private final long instructionsExecuted;
+	private ProgramVerifier verifier;    //verification from the instruction counter on, made by the first restore
+
+	//pre:  memory is never modified after this, it holds format.getMemorySize() words
+	Snapshot(WordFormat format, int[] memory, int accumulator, int instructionCounter, int instructionRegister,
+			int operationCode, int operand, long instructionsExecuted) {
+		this.format = format;
+		this.memory = memory;
+		this.accumulator = accumulator;
+		this.instructionCounter = instructionCounter;
+		this.instructionRegister = instructionRegister;
+		this.operationCode = operationCode;
+		this.operand = operand;
+		this.instructionsExecuted = instructionsExecuted;
+	}
+
+	public WordFormat getFormat() {
+		return format;
+	}
+
+	public int getWord(int address) {
+		return memory[address];
+	}
+
+	public int getAccumulator() {
+		return accumulator;
+	}
+
+	public int getInstructionCounter() {
+		return instructionCounter;
+	}
+
+	public int getInstructionRegister() {
+		return instructionRegister;
+	}
+
+	public int getOperationCode() {
+		return operationCode;
+	}
+
+	public int getOperand() {
+		return operand;
+	}
+
+	public long getInstructionsExecuted() {
+		return instructionsExecuted;
+	}
+
+	//the methods below give Simpletron.restore the snapshot's arrays, which must not be modified
+
+	int[] memory() {
+		return memory;
+	}
+
+	//post: returns the verification of the memory, starting at the instruction counter
+	synchronized ProgramVerifier verifier() {
+		if (verifier == null) {
+			verifier = new ProgramVerifier(memory, format.getOperandRadix());
+			verifier.verify(instructionCounter);
+		}
+		return verifier;
+	}
+
+	//post: returns the snapshot in the binary format, the buffer is ready to be written
+	public ByteBuffer encode() {
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + memory.length * 4 + CHECKSUM_SIZE);
+		buffer.putInt(MAGIC);
+		buffer.putShort((short)VERSION);
+		buffer.putShort((short)0);
+		buffer.putInt(format.getMemorySize());
+		buffer.putInt(format.getOperandRadix());
+		buffer.putInt(format.getMaxWord());
+		buffer.putInt(accumulator);
+		buffer.putInt(instructionCounter);
+		buffer.putInt(instructionRegister);
+		buffer.putInt(operationCode);
+		buffer.putInt(operand);
+		buffer.putLong(instructionsExecuted);
+		buffer.asIntBuffer().put(memory);
+		buffer.position(HEADER_SIZE + memory.length * 4);
+
+		CRC32 crc = new CRC32();
+		crc.update(buffer.array(), 0, buffer.position());
+		buffer.putInt((int)crc.getValue());
+		buffer.flip();
+		return buffer;
+	}
+
+	//post: the snapshot is written to fileName in the binary format
+	public void write(String fileName) throws IOException {
+		ByteBuffer buffer = encode();
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+		}
+	}
+
+	//post: returns the snapshot saved in fileName, throws IOException if it can't be read or is damaged
+	public static Snapshot read(String fileName) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return decode(buffer);
+		}
+	}
+
+	//post: returns the snapshot in buffer, throws IOException if it is not a snapshot or is damaged
+	public static Snapshot decode(ByteBuffer buffer) throws IOException {
+		if (buffer.limit() < HEADER_SIZE + CHECKSUM_SIZE || buffer.getInt(0) != MAGIC)
+			throw new IOException("not a Simpletron snapshot");
+		int version = buffer.getShort(4) & 0xffff;
+		if (version != VERSION)
+			throw new IOException("unsupported snapshot version " + version);
+		WordFormat format;
+		try {
+			format = new WordFormat(buffer.getInt(8), buffer.getInt(12), buffer.getInt(16));
+		} catch (IllegalArgumentException e) {
+			throw new IOException("snapshot has an invalid format: " + e.getMessage());
+		}
+		int end = HEADER_SIZE + format.getMemorySize() * 4;
+		if (buffer.limit() != end + CHECKSUM_SIZE)
+			throw new IOException("snapshot has the wrong length");
+
+		CRC32 crc = new CRC32();
+		ByteBuffer covered = buffer.duplicate();
+		covered.position(0).limit(end);
+		crc.update(covered);
+		if ((int)crc.getValue() != buffer.getInt(end))
+			throw new IOException("snapshot checksum does not match");
+
+		int[] memory = new int[format.getMemorySize()];
+		ByteBuffer words = buffer.duplicate();
+		words.position(HEADER_SIZE).limit(end);
+		words.asIntBuffer().get(memory);
+		for (int word : memory) {
+			if (word > format.getMaxWord() || word < format.getMinWord())
+				throw new IOException("snapshot word out of range");
+		}
+		return new Snapshot(format, memory, buffer.getInt(20), buffer.getInt(24), buffer.getInt(28),
+				buffer.getInt(32), buffer.getInt(36), buffer.getLong(40));
+	}
+
+	//post: returns the memory dump of the snapshot, see appendDump
+	public String dump() {
+		int rowLength = 8 + 10 * (format.getMaxWord() > 99999 ? 11 : 7);
+		StringBuilder dump = new StringBuilder(200 + (memory.length / 10 + 2) * rowLength);
+		appendDump(dump);
+		return dump.toString();
+	}
+
+	//post: the registers and a grid of the memory, ten words to a row, are appended to dump, exactly
+	//      as Simpletron has always printed them
+	public void appendDump(StringBuilder dump) {
+		int wordDigits = digits(format.getMaxWord());
+		int addressDigits = digits(memory.length - 1); //3 in the standard format
+
+		dump.append("REGISTERS:\n");
+		dump.append("accumulator          ");
+		appendWord(dump, accumulator, wordDigits);
+		dump.append("\ninstructionCounter      ");
+		appendCode(dump, instructionCounter, addressDigits);
+		dump.append("\ninstructionRegister  ");
+		appendWord(dump, instructionRegister, wordDigits);
+		dump.append("\noperationCode            ");
+		appendCode(dump, operationCode, 2);
+		dump.append("\noperand                 ");
+		appendCode(dump, operand, addressDigits);
+		dump.append("\n\nMEMORY:\n");
+
+		appendSpaces(dump, addressDigits);
+		for (int i = 0; i < 10; i++) {
+			appendSpaces(dump, wordDigits + 1);
+			dump.append(i);
+		}
+		dump.append('\n');
+
+		for (int row = 0; row < memory.length / 10; row++) {
+			//row labels are the address of the first word, right aligned
+			appendSpaces(dump, addressDigits - (row == 0 ? 1 : digits(row) + 1));
+			dump.append(row);
+			if (row != 0)
+				dump.append('0');
+			for (int n = row * 10; n < row * 10 + 10; n++) {
+				dump.append(' ');
+				appendWord(dump, memory[n], wordDigits);
+			}
+			dump.append('\n');
+		}
+	}
+
+	//post: returns the number of characters of value in decimal, with its minus sign
+	private static int digits(int value) {
+		if (value == Integer.MIN_VALUE)
+			return 11;
+		int count = (value < 0) ? 2 : 1;
+		for (int rest = Math.abs(value); rest >= 10; rest /= 10)
+			count++;
+		return count;
+	}
+
+	//post: word is appended as a sign followed by at least wordDigits digits, +0042 or -0042.
+	//      The smallest int has no positive value and is appended as --2147483648
+	private static void appendWord(StringBuilder dump, int word, int wordDigits) {
+		dump.append(word >= 0 ? '+' : '-');
+		int magnitude = Math.abs(word);
+		for (int i = digits(magnitude); i < wordDigits; i++)
+			dump.append('0');
+		dump.append(magnitude);
+	}
+
+	//post: code is appended with 0s in front of it to make it at least length characters long
+	private static void appendCode(StringBuilder dump, int code, int length) {
+		for (int i = digits(code); i < length; i++)
+			dump.append('0');
+		dump.append(code);
+	}
+
+	private static void appendSpaces(StringBuilder dump, int count) {
+		for (int i = 0; i < count; i++)
+			dump.append(' ');
+	}
+
+	public static void main(String [] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("usage: java Snapshot checkpoint.sms");
+			return;
+		}
+		Snapshot snapshot = read(args[0]);
+		System.out.println(snapshot.getFormat() + ", " + snapshot.getInstructionsExecuted() + " instructions executed");
+		System.out.print(snapshot.dump());
+	}
+}
@@ -0,0 +1,95 @@
+/**************************************************************************
+* Input that reads whitespace separated integers from a stream, such as   *
+* System.in or a file. The bytes are parsed directly instead of through   *
+* Scanner, so reading a value allocates nothing.                          *
+**************************************************************************/
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+
+public class StreamInput implements SimpletronInput {
+	private static final int BUFFER_SIZE = 8192;
+
+	private InputStream stream;
+	private boolean interactive;     //true if a user types the values as they are read
+	private byte[] buffer;
+	private int position;
+	private int length;
+
+	//post: an input that reads stream, which is read by whole buffers and not only up to the values taken
+	public StreamInput(InputStream stream) {
+		this(stream, false);
+	}
+
+	public StreamInput(InputStream stream, boolean interactive) {
+		this.stream = stream;
+		this.interactive = interactive;
+		buffer = new byte[BUFFER_SIZE];
+	}
+
+	//post: returns an input that reads the integers of a file
+	public static StreamInput fromFile(String fileName) throws FileNotFoundException {
+		return new StreamInput(new FileInputStream(fileName));
+	}
+
+	//post: returns the next integer, throws InputMismatchException if the next token isn't an int
+	//      and NoSuchElementException if the stream has ended
+	@Override
+	public int nextInt() {
+		int c = next();
+		while (c >= 0 && Character.isWhitespace(c))
+			c = next();
+		if (c < 0)
+			throw new NoSuchElementException("no input left to read");
+
+		boolean negative = false;
+		if (c == '-' || c == '+') {
+			negative = (c == '-');
+			c = next();
+		}
+		if (c < '0' || c > '9')
+			throw new InputMismatchException();
+
+		//accumulated negative, so Integer.MIN_VALUE can be read
+		long value = 0;
+		while (c >= '0' && c <= '9') {
+			value = value * 10 - (c - '0');
+			if (value < Integer.MIN_VALUE)
+				throw new InputMismatchException("value out of range");
+			c = next();
+		}
+		if (c >= 0 && !Character.isWhitespace(c))
+			throw new InputMismatchException();
+		if (!negative) {
+			value = -value;
+			if (value > Integer.MAX_VALUE)
+				throw new InputMismatchException("value out of range");
+		}
+		return (int)value;
+	}
+
+	@Override
+	public boolean isInteractive() {
+		return interactive;
+	}
+
+	//post: returns the next byte of the stream, -1 at its end
+	private int next() {
+		if (position == length) {
+			try {
+				length = stream.read(buffer, 0, buffer.length);
+			} catch (IOException e) {
+				throw new NoSuchElementException(e.getMessage());
+			}
+			position = 0;
+			if (length <= 0) {
+				length = 0;
+				return -1;
+			}
+		}
+		return buffer[position++] & 0xff;
+	}
+}
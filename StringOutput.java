@@ -0,0 +1,38 @@
+/**************************************************************************
+* Output that keeps the transcript of a Simpletron in memory.             *
+**************************************************************************/
+public class StringOutput implements SimpletronOutput {
+	private StringBuilder transcript;
+
+	public StringOutput() {
+		transcript = new StringBuilder();
+	}
+
+	@Override
+	public void print(String string) {
+		transcript.append(string);
+	}
+
+	@Override
+	public void echo(String string) {
+		transcript.append(string);
+	}
+
+	@Override
+	public void printWord(int word) {
+		transcript.append(word).append('\n');
+	}
+
+	@Override
+	public void echoWord(int word) {
+		transcript.append(word).append('\n');
+	}
+
+	@Override
+	public void close() {
+	}
+
+	public String getTranscript() {
+		return transcript.toString();
+	}
+}
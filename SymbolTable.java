@@ -1,31 +1,176 @@
-import java.util.TreeMap;
+/**************************************************************************
+* The symbol table of a program: the location of every line number,       *
+* variable, and constant in it. It is a hash table with open addressing,  *
+* keyed by the type and the symbol packed into a long, with the locations *
+* in an int array beside the keys, so looking a symbol up or entering it  *
+* allocates nothing. putIfAbsent looks a symbol up and enters it if it is *
+* not there in a single probe, which is what a compiler does for every    *
+* operand.                                                                *
+*                                                                         *
+* The methods that take or return a TableEntry are kept for the callers   *
+* that list the table. The entries they return are copies, changing one   *
+* does not change the table.                                              *
+**************************************************************************/
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 public class SymbolTable {
-	private TreeMap<TableEntry, TableEntry> table;
-	
+	public static final int NOT_FOUND = -1;            //location of a symbol that is not in the table
+
+	private static final long EMPTY = -1;               //key of a free slot, no type and symbol pack to it
+	private static final long GOLDEN = 0x9E3779B97F4A7C15L; //2^64 divided by the golden ratio, spreads the keys
+	private static final int INITIAL_CAPACITY = 64;     //a power of two
+
+	private long[] keys;
+	private int[] locations;
+	private int size;
+	private int shift;     //64 minus log2 of the capacity, a key's hash is its top bits after multiplying
+	private int threshold; //size at which the table doubles, half the capacity
 
 	public SymbolTable() {
-		table = new TreeMap<>();
+		allocate(INITIAL_CAPACITY);
+	}
+
+	//post: the table holds the entries of other, and changing either does not change the other
+	SymbolTable(SymbolTable other) {
+		keys = other.keys.clone();
+		locations = other.locations.clone();
+		size = other.size;
+		shift = other.shift;
+		threshold = other.threshold;
+	}
+
+	//post: returns type and symbol packed into a long. Keys order by type and then by symbol, and none is 0
+	//      for the types the compiler uses
+	static long key(int symbol, char type) {
+		return ((long)type << 32) | ((symbol ^ Integer.MIN_VALUE) & 0xffffffffL);
+	}
+
+	static int symbol(long key) {
+		return (int)key ^ Integer.MIN_VALUE;
 	}
 
-	public void put(TableEntry entry) {
-		table.put(entry, entry);
+	static char type(long key) {
+		return (char)(key >>> 32);
+	}
+
+	//post: returns the location of symbol and type, NOT_FOUND if they are not in the table
+	public int getLocation(int symbol, char type) {
+		long key = key(symbol, type);
+		int slot = slot(key);
+		return keys[slot] == key ? locations[slot] : NOT_FOUND;
+	}
+
+	//post: symbol and type are at location, returns the location they replaced, NOT_FOUND if there was none
+	public int put(int symbol, char type, int location) {
+		long key = key(symbol, type);
+		int slot = slot(key);
+		if (keys[slot] == key) {
+			int previous = locations[slot];
+			locations[slot] = location;
+			return previous;
+		}
+		insert(slot, key, location);
+		return NOT_FOUND;
+	}
+
+	//post: returns the location of symbol and type if they are in the table. If they are not, they are
+	//      entered at location and returns NOT_FOUND
+	public int putIfAbsent(int symbol, char type, int location) {
+		long key = key(symbol, type);
+		int slot = slot(key);
+		if (keys[slot] == key)
+			return locations[slot];
+		insert(slot, key, location);
+		return NOT_FOUND;
+	}
+
+	//post: entry is in the table, returns the entry with the same symbol and type it replaced, null if there was none
+	public TableEntry put(TableEntry entry) {
+		int previous = put(entry.getSymbol(), entry.getType(), entry.getLocation());
+		return previous == NOT_FOUND ? null : new TableEntry(entry.getSymbol(), entry.getType(), previous);
 	}
 
 	public TableEntry get(int symbol, char type) {
-		return get(new TableEntry(symbol, type, 0));
+		int location = getLocation(symbol, type);
+		return location == NOT_FOUND ? null : new TableEntry(symbol, type, location);
 	}
 
 	public TableEntry get(TableEntry entry) {
-		return table.get(entry);
+		return get(entry.getSymbol(), entry.getType());
 	}
 
 	public boolean find(int symbol, char type) {
-		return find(new TableEntry(symbol, type, 0));
+		return getLocation(symbol, type) != NOT_FOUND;
 	}
 
 	public boolean find(TableEntry entry) {
-		return (table.get(entry) != null);
+		return find(entry.getSymbol(), entry.getType());
+	}
+
+	public int size() {
+		return size;
+	}
+
+	//post: the table is empty, it keeps its capacity
+	public void clear() {
+		Arrays.fill(keys, EMPTY);
+		size = 0;
+	}
+
+	//post: returns every entry in the table, ordered by type then symbol
+	public Iterable<TableEntry> entries() {
+		long[] sorted = new long[size];
+		int count = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != EMPTY)
+				sorted[count++] = keys[i];
+		}
+		Arrays.sort(sorted);
+		List<TableEntry> entries = new ArrayList<>(size);
+		for (long key : sorted)
+			entries.add(new TableEntry(symbol(key), type(key), locations[slot(key)]));
+		return Collections.unmodifiableList(entries);
 	}
 
-}
\ No newline at end of file
+	//post: returns the slot key is in, or the free slot it goes in if it is not in the table
+	private int slot(long key) {
+		int mask = keys.length - 1;
+		int slot = (int)((key * GOLDEN) >>> shift);
+		while (keys[slot] != EMPTY && keys[slot] != key)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	//pre:  slot is the free slot key goes in
+	//post: key is at location, the table doubles if it is half full
+	private void insert(int slot, long key, int location) {
+		keys[slot] = key;
+		locations[slot] = location;
+		if (++size > threshold)
+			rehash(keys.length * 2);
+	}
+
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		int[] oldLocations = locations;
+		allocate(capacity);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY) {
+				int slot = slot(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				locations[slot] = oldLocations[i];
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		Arrays.fill(keys, EMPTY);
+		locations = new int[capacity];
+		shift = 64 - Integer.numberOfTrailingZeros(capacity);
+		threshold = capacity / 2;
+	}
+}
@@ -42,7 +42,7 @@ public class TableEntry implements Comparable<TableEntry> {
 		if (this.getType() != entry.getType())
 			return this.getType() - entry.getType();
 
-		return this.getSymbol() - entry.getSymbol();	
+		return Integer.compare(this.getSymbol(), entry.getSymbol()); //subtracting overflows for large constants
 	}
 
 	@Override
@@ -52,6 +52,11 @@ public class TableEntry implements Comparable<TableEntry> {
 		return false;
 	}
 
+	@Override
+	public int hashCode() {
+		return 31 * type + symbol;
+	}
+
 	
 
 }
\ No newline at end of file
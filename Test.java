@@ -1,7 +1,11 @@
 public class Test {
 	public static void main(String [] args) {
 		Simpletron test = new Simpletron("program2.txt");
-		test.loadProgram();
-		test.executeProgram();
+		try {
+			test.loadProgram();
+			test.executeProgram();
+		} catch (SimpletronException e) {
+			System.exit(-1);
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,151 @@
+/**************************************************************************
+* Runs a machine level program in the interpreter and as translated JVM   *
+* bytecode with the same input, checks that the screen output and the     *
+* .out transcript are identical, and reports the time each one took.      *
+* -restore instead checks that a machine restored from a snapshot taken   *
+* in the middle of a run finishes the same way in both modes.             *
+*                                                                         *
+* usage: java TranslatorHarness program.txt [runs] [input...]             *
+*        java TranslatorHarness -restore                                  *
+**************************************************************************/
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+public class TranslatorHarness {
+	private String fileName;
+	private String input;
+
+	//output of the last run
+	private String screen;
+	private String transcript;
+	private long nanos;
+
+	public TranslatorHarness(String fileName, String input) {
+		this.fileName = fileName;
+		this.input = input;
+	}
+
+	//post: the program is run once in mode, and screen, transcript, and nanos hold the results
+	private void run(Simpletron.ExecutionMode mode) throws IOException {
+		InputStream stdin = System.in;
+		PrintStream stdout = System.out;
+		ByteArrayOutputStream captured = new ByteArrayOutputStream();
+		try {
+			System.setIn(new ByteArrayInputStream(input.getBytes()));
+			System.setOut(new PrintStream(captured, true));
+
+			Simpletron simpletron = new Simpletron(fileName);
+			simpletron.loadProgram();
+			simpletron.setExecutionMode(mode);
+			long start = System.nanoTime();
+			try {
+				simpletron.executeProgram();
+			} catch (SimpletronException e) {
+				//the error is part of the output being compared
+			}
+			nanos = System.nanoTime() - start;
+		} finally {
+			System.setIn(stdin);
+			System.setOut(stdout);
+		}
+		screen = captured.toString();
+		transcript = new String(Files.readAllBytes(Paths.get(fileName.substring(0, fileName.length()-3) + "out")));
+	}
+
+	//post: returns true if both modes produce the same output, the fastest of runs runs of each mode is printed
+	public boolean compare(int runs) throws IOException {
+		long interpreted = Long.MAX_VALUE;
+		long translated  = Long.MAX_VALUE;
+		boolean same = true;
+
+		for (int i = 0; i < runs; i++) {
+			run(Simpletron.ExecutionMode.INTERPRETED);
+			String expectedScreen = screen;
+			String expectedTranscript = transcript;
+			interpreted = Math.min(interpreted, nanos);
+
+			run(Simpletron.ExecutionMode.TRANSLATED);
+			translated = Math.min(translated, nanos);
+
+			if (!screen.equals(expectedScreen) || !transcript.equals(expectedTranscript))
+				same = false;
+		}
+
+		System.out.println(fileName + (same ? ": output identical" : ": OUTPUT DIFFERS"));
+		System.out.printf("interpreted %10.3f ms%n", interpreted / 1e6);
+		System.out.printf("translated  %10.3f ms%n", translated / 1e6);
+		return same;
+	}
+
+	//adds 5 to the accumulator on each of 4 trips through a loop that branches back to word 0, so the
+	//machine is at word 0 with a nonzero accumulator after each trip, then writes the total, 20
+	private static final int[] LOOP = {
+		30014, 21011, 20012, 31013, 21012, 20012, 42009, 20011, 40000, 11011, 43000,
+		0, 4, 1, 5
+	};
+
+	//post: returns true if a machine restored from a snapshot taken at word 0 with a nonzero accumulator
+	//      writes the same words and counts the same instructions in both modes
+	public static boolean compareRestored() {
+		Simpletron simpletron = new Simpletron(new ArrayInput(new int[0]), new StringOutput());
+		simpletron.loadProgram(new ProgramImage(LOOP));
+		Snapshot snapshot = simpletron.snapshot();
+		while (snapshot.getInstructionCounter() != 0 || snapshot.getAccumulator() == 0) {
+			if (simpletron.executeSlice(1) == Simpletron.SliceResult.HALTED)
+				throw new IllegalStateException("the loop halted before it branched back to word 0");
+			snapshot = simpletron.snapshot();
+		}
+
+		String expected = null;
+		long counted = 0;
+		boolean same = true;
+		for (Simpletron.ExecutionMode mode : new Simpletron.ExecutionMode[] {
+				Simpletron.ExecutionMode.INTERPRETED, Simpletron.ExecutionMode.TRANSLATED}) {
+			StringOutput output = new StringOutput();
+			Simpletron restored = new Simpletron(new ArrayInput(new int[0]), output);
+			restored.setExecutionMode(mode);
+			restored.restore(snapshot);
+			restored.executeProgram();
+			if (expected == null) {
+				expected = output.getTranscript();
+				counted = restored.getInstructionsExecuted();
+			} else if (!output.getTranscript().equals(expected) || restored.getInstructionsExecuted() != counted) {
+				same = false;
+			}
+		}
+		System.out.println("restored at word 0, accumulator " + snapshot.getAccumulator()
+				+ (same ? ": output identical" : ": OUTPUT DIFFERS"));
+		return same;
+	}
+
+	public static void main(String [] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("usage: java TranslatorHarness program.txt [runs] [input...]");
+			System.out.println("       java TranslatorHarness -restore");
+			return;
+		}
+		if (args[0].equals("-restore")) {
+			if (!compareRestored())
+				System.exit(1);
+			return;
+		}
+
+		int runs = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+		StringBuilder input = new StringBuilder();
+		for (int i = 2; i < args.length; i++)
+			input.append(args[i]).append('\n');
+
+		BytecodeTranslator translator = new BytecodeTranslator(Simpletron.readImage(args[0]));
+		if (!translator.translate())
+			System.out.println(translator.getError() + ", the translated run falls back to the interpreter");
+
+		TranslatorHarness harness = new TranslatorHarness(args[0], input.toString());
+		if (!harness.compare(runs))
+			System.exit(1);
+	}
+}
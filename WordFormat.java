@@ -0,0 +1,77 @@
+/**************************************************************************
+* The shape of a Simpletron's memory and words. An instruction is the     *
+* operation code times the operand radix plus the operand, so the radix   *
+* must be at least the memory size, and the largest instruction must fit  *
+* in a word. STANDARD is the original machine, 1000 words of five digits. *
+* Wide formats have more memory and nine digit words, which still fit in  *
+* an int, so the accumulator and memory stay 32 bits wide.                *
+**************************************************************************/
+public class WordFormat {
+	public static final int MAX_WIDE_WORD = 999999999;
+
+	public static final WordFormat STANDARD = new WordFormat(1000, 1000, 99999);
+
+	private final int memorySize;
+	private final int operandRadix;
+	private final int maxWord;          //the smallest word is -maxWord
+
+	//pre:  memorySize is a multiple of 10 <= operandRadix, HALT * operandRadix + operandRadix - 1 <= maxWord
+	public WordFormat(int memorySize, int operandRadix, int maxWord) {
+		if (memorySize < 10 || memorySize > operandRadix || memorySize % 10 != 0) //the memory dump has rows of ten
+			throw new IllegalArgumentException("memory size must be a multiple of 10 no larger than the operand radix");
+		if ((long)Simpletron.HALT * operandRadix + operandRadix - 1 > maxWord)
+			throw new IllegalArgumentException("instructions do not fit in a word of " + maxWord);
+		this.memorySize = memorySize;
+		this.operandRadix = operandRadix;
+		this.maxWord = maxWord;
+	}
+
+	//post: returns a format with memorySize words of nine digits, the radix is the smallest power
+	//      of ten that holds every address
+	public static WordFormat wide(int memorySize) {
+		int radix = 1000;
+		while (radix < memorySize)
+			radix *= 10;
+		return new WordFormat(memorySize, radix, MAX_WIDE_WORD);
+	}
+
+	public int getMemorySize() {
+		return memorySize;
+	}
+
+	public int getOperandRadix() {
+		return operandRadix;
+	}
+
+	public int getMaxWord() {
+		return maxWord;
+	}
+
+	public int getMinWord() {
+		return -maxWord;
+	}
+
+	//post: returns true for the original 1000 word, five digit format
+	public boolean isStandard() {
+		return memorySize == STANDARD.memorySize && operandRadix == STANDARD.operandRadix
+				&& maxWord == STANDARD.maxWord;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof WordFormat))
+			return false;
+		WordFormat format = (WordFormat)other;
+		return memorySize == format.memorySize && operandRadix == format.operandRadix && maxWord == format.maxWord;
+	}
+
+	@Override
+	public int hashCode() {
+		return (memorySize * 31 + operandRadix) * 31 + maxWord;
+	}
+
+	@Override
+	public String toString() {
+		return memorySize + " words, operand radix " + operandRadix + ", words up to " + maxWord;
+	}
+}
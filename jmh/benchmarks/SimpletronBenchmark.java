@@ -0,0 +1,53 @@
+/**************************************************************************
+* Runs the benchmarks of Benchmarks under JMH, one fork per benchmark, so *
+* each is measured in a JVM whose profile no other benchmark has shaped.  *
+* Scores are operations per second: one compile, one expression, one     *
+* table operation, or one whole run of the program.                      *
+*                                                                         *
+* The classes measured are in the default package, which a class in a    *
+* package can't name, so the operation is looked up once, in setUp, and  *
+* timed through LongSupplier. Its result goes back to JMH, which keeps    *
+* the work from being optimized away.                                     *
+**************************************************************************/
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SimpletronBenchmark {
+	@Param({"compile.small", "compile.large", "compile.patch", "compile.relink", "compile.cached",
+			"expression.getPostfix", "expression.evaluate",
+			"symboltable.get", "symboltable.treemap.get", "symboltable.put", "symboltable.treemap.put",
+			"simpletron.interpreted", "simpletron.decoded", "simpletron.fused", "simpletron.translated",
+			"simpletron.tiered"})
+	public String benchmark;
+
+	private LongSupplier operation;
+
+	@Setup
+	public void setUp() throws ReflectiveOperationException {
+		operation = (LongSupplier)Class.forName("Benchmarks").getMethod("operation", String.class).invoke(null, benchmark);
+	}
+
+	@Benchmark
+	public long run() {
+		return operation.getAsLong();
+	}
+}